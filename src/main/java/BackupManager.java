@@ -0,0 +1,387 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * BackupManager keeps the backups of transactions.csv in the backups folder
+ *
+ * instead of copying the whole file every time, backups are chains:
+ *  - a full backup is a plain copy of the file
+ *  - after that, as long as the file only grew, a delta backup only stores the bytes
+ *    appended since the previous backup ("only grew" means the crc of everything up to
+ *    where the last backup ended is still the same, so an edit anywhere starts a new chain)
+ *  - if nothing changed since the last backup, nothing is written at all
+ * the file as it was at any backup is the full backup plus the deltas after it (see restore)
+ *
+ * backups/manifest.txt lists every backup in order, one line each:
+ *   sequence|full or delta|file name|start offset|end offset|crc of all the bytes before end|created millis
+ *
+ * backups normally run on a background thread so writes don't wait for them, and old chains
+ * are deleted once they are older than -Dncm.backup.maxAgeDays (default 30) or there are more
+ * than -Dncm.backup.maxChains of them (default 10), the newest chain is always kept
+ */
+public class BackupManager {
+    private static final String BACKUP_FOLDER = "backups";
+    private static final String MANIFEST_NAME = "manifest.txt";
+    private static final String FULL = "full";
+    private static final String DELTA = "delta";
+
+    private static final int CRC_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_AGE_DAYS = Integer.getInteger("ncm.backup.maxAgeDays", 30);
+    private static final int MAX_CHAINS = Math.max(1, Integer.getInteger("ncm.backup.maxChains", 10));
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private static final Object lock = new Object();
+    private static ExecutorService executor; // one daemon thread, created on first use
+    private static boolean pending;          // a background backup was asked for and didn't run yet
+    private static boolean fullRequested;    // the next backup starts a new chain, even if the file only grew
+
+    /**
+     * asks for a backup on the background thread, returns right away
+     * several requests before it runs end up as a single backup
+     */
+    public static void backupInBackground() {
+        ExecutorService backgroundThread;
+        synchronized (lock) {
+            if (pending) {
+                return;
+            }
+            pending = true;
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ledger-backup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            backgroundThread = executor;
+        }
+        backgroundThread.execute(() -> {
+            synchronized (lock) {
+                if (pending) { // backupNow() may have done the work already
+                    backup();
+                }
+            }
+        });
+    }
+
+    /**
+     * like backupInBackground(), but the backup is a full one (a new chain)
+     * used after the file was rewritten, so a restore never mixes the old and the new file
+     */
+    public static void fullBackupInBackground() {
+        synchronized (lock) {
+            fullRequested = true;
+        }
+        backupInBackground();
+    }
+
+    /**
+     * makes the backup right now on this thread (like before the file gets overwritten)
+     */
+    public static void backupNow() {
+        synchronized (lock) {
+            backup();
+        }
+    }
+
+    /**
+     * waits for the background backup to finish, used when the app exits
+     */
+    public static void shutdown() {
+        ExecutorService running;
+        synchronized (lock) {
+            running = executor;
+            executor = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        try {
+            running.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * rebuilds the file as it was at the given backup into target
+     * (the full backup of its chain followed by every delta up to it)
+     */
+    public static void restore(int sequence, Path target) throws IOException {
+        synchronized (lock) {
+            List<Entry> manifest = readManifest();
+            int last = -1;
+            for (int i = 0; i < manifest.size(); i++) {
+                if (manifest.get(i).sequence == sequence) {
+                    last = i;
+                }
+            }
+            if (last < 0) {
+                throw new IOException("No backup with number " + sequence);
+            }
+            int first = last;
+            while (first > 0 && !manifest.get(first).type.equals(FULL)) {
+                first--;
+            }
+            if (!manifest.get(first).type.equals(FULL)) {
+                throw new IOException("The full backup for backup " + sequence + " is missing");
+            }
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = first; i <= last; i++) {
+                    try (FileChannel in = FileChannel.open(backupPath(manifest.get(i).fileName))) {
+                        long position = 0;
+                        while (position < in.size()) {
+                            position += in.transferTo(position, in.size() - position, out);
+                        }
+                    }
+                }
+                out.force(true);
+            }
+        }
+    }
+
+    // does the actual work, always called with the lock above held (the one inside this app)
+    private static void backup() {
+        pending = false;
+        Metrics.Timer timer = Metrics.start("backup");
+        // only one copy of the app writes backups at a time, and the file can't change while it is copied
+        LedgerLock backupLock = LedgerLock.backup();
+        try {
+            LedgerLock reading = LedgerLock.readLedger();
+            try {
+                copyLedger();
+            } finally {
+                reading.unlock();
+            }
+        } finally {
+            backupLock.unlock();
+        }
+        timer.stop();
+    }
+
+    private static void copyLedger() {
+        File sourceFile = FileManager.getLedgerFile();
+        // Only backups if file exists and has content
+        if (!sourceFile.exists() || sourceFile.length() == 0) {
+            return;
+        }
+        try {
+            Files.createDirectories(Path.of(BACKUP_FOLDER));
+            List<Entry> manifest = readManifest();
+            Entry previous = manifest.isEmpty() ? null : manifest.get(manifest.size() - 1);
+            int sequence = previous == null ? 1 : previous.sequence + 1;
+
+            try (FileChannel source = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+                long size = source.size();
+                Entry entry;
+                // the crc of the part already backed up is carried on through the copy of the
+                // new part, so a delta reads the file once
+                CRC32 crc = new CRC32();
+                if (!fullRequested && previous != null && onlyGrew(source, size, previous, crc)) {
+                    if (size == previous.end) {
+                        return; // same as the last backup, nothing to store
+                    }
+                    entry = copy(source, DELTA, sequence, previous.end, size, crc);
+                } else {
+                    entry = copy(source, FULL, sequence, 0, size, new CRC32());
+                }
+                manifest.add(entry);
+                appendToManifest(entry);
+                fullRequested = false;
+            }
+            expireOldChains(manifest);
+        } catch (IOException e) {
+            // if backup fails, it is not critical, just log it
+            System.out.println("Note: Could not create backup: " + e.getMessage());
+        }
+    }
+
+    // true if the file still starts with exactly what the previous backups saved
+    // (the crc of every byte up to where the last backup ended, checking only the last few KB
+    // let an edit earlier in the file through as "growth", and restore then rebuilt the wrong file)
+    // crc is left holding the crc of source[0..previous.end)
+    private static boolean onlyGrew(FileChannel source, long size, Entry previous, CRC32 crc) throws IOException {
+        if (size < previous.end || !Files.exists(backupPath(previous.fileName))) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CRC_BUFFER_SIZE);
+        long position = 0;
+        while (position < previous.end) {
+            int read = readChunk(source, buffer, position, previous.end);
+            if (read < 0) {
+                return false;
+            }
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue() == previous.crc;
+    }
+
+    // copies source[start..end) into a new backup file, crc has to hold the crc of source[0..start)
+    // and ends up with the one of source[0..end) (that is what the next delta is checked against)
+    private static Entry copy(FileChannel source, String type, int sequence, long start, long end, CRC32 crc)
+            throws IOException {
+        String timestamp = LocalDateTime.now().format(TIMESTAMP);
+        // the sequence number keeps names unique even for several backups in the same second
+        String fileName = (type.equals(FULL) ? "transactions_backup_" : "transactions_delta_")
+                + timestamp + "_" + sequence + ".csv";
+        try (FileChannel out = FileChannel.open(backupPath(fileName),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CRC_BUFFER_SIZE);
+            long position = start;
+            while (position < end) {
+                int read = readChunk(source, buffer, position, end);
+                if (read < 0) {
+                    throw new IOException("the ledger got shorter while it was backed up");
+                }
+                crc.update(buffer);
+                buffer.rewind();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                position += read;
+            }
+            out.force(true);
+        }
+        return new Entry(sequence, type, fileName, start, end, crc.getValue(), System.currentTimeMillis());
+    }
+
+    // reads the next piece of source[position..end) into the buffer, ready to be used (-1 at end of file)
+    private static int readChunk(FileChannel source, ByteBuffer buffer, long position, long end) throws IOException {
+        buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+        int read = source.read(buffer, position);
+        buffer.flip();
+        return read;
+    }
+
+    /**
+     * deletes whole chains (a full backup and its deltas) that are too old or too many
+     * the newest chain is always kept, it is the one new deltas are added to
+     */
+    private static void expireOldChains(List<Entry> manifest) throws IOException {
+        List<List<Entry>> chains = new ArrayList<>();
+        for (Entry entry : manifest) {
+            if (entry.type.equals(FULL) || chains.isEmpty()) {
+                chains.add(new ArrayList<>());
+            }
+            chains.get(chains.size() - 1).add(entry);
+        }
+        long oldestAllowed = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        List<Entry> kept = new ArrayList<>();
+        boolean deleted = false;
+        for (int i = 0; i < chains.size(); i++) {
+            List<Entry> chain = chains.get(i);
+            boolean newest = i == chains.size() - 1;
+            boolean tooMany = chains.size() - i > MAX_CHAINS;
+            boolean tooOld = chain.get(chain.size() - 1).created < oldestAllowed;
+            if (!newest && (tooMany || tooOld)) {
+                for (Entry entry : chain) {
+                    Files.deleteIfExists(backupPath(entry.fileName));
+                }
+                deleted = true;
+            } else {
+                kept.addAll(chain);
+            }
+        }
+        if (deleted) {
+            writeManifest(kept);
+        }
+    }
+
+    private static List<Entry> readManifest() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Path manifest = backupPath(MANIFEST_NAME);
+        if (!Files.exists(manifest)) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            Entry entry = Entry.parse(line);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static void appendToManifest(Entry entry) throws IOException {
+        Files.writeString(backupPath(MANIFEST_NAME), entry.toLine() + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    }
+
+    // rewrites the manifest through a temp file so it is never half written
+    private static void writeManifest(List<Entry> entries) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (Entry entry : entries) {
+            text.append(entry.toLine()).append('\n');
+        }
+        Path temp = backupPath(MANIFEST_NAME + ".tmp");
+        Files.writeString(temp, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(temp, backupPath(MANIFEST_NAME),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path backupPath(String fileName) {
+        return Path.of(BACKUP_FOLDER, fileName);
+    }
+
+    /**
+     * one line of the manifest
+     */
+    private static class Entry {
+        final int sequence;
+        final String type;
+        final String fileName;
+        final long start;
+        final long end;
+        final long crc;
+        final long created;
+
+        Entry(int sequence, String type, String fileName, long start, long end, long crc, long created) {
+            this.sequence = sequence;
+            this.type = type;
+            this.fileName = fileName;
+            this.start = start;
+            this.end = end;
+            this.crc = crc;
+            this.created = created;
+        }
+
+        String toLine() {
+            return sequence + "|" + type + "|" + fileName + "|" + start + "|" + end + "|" + crc + "|" + created;
+        }
+
+        // returns null for lines we can't read, so one bad line doesn't lose every backup
+        static Entry parse(String line) {
+            String[] parts = line.split("\\|");
+            if (parts.length != 7) {
+                return null;
+            }
+            try {
+                return new Entry(Integer.parseInt(parts[0]), parts[1], parts[2], Long.parseLong(parts[3]),
+                        Long.parseLong(parts[4]), Long.parseLong(parts[5]), Long.parseLong(parts[6]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
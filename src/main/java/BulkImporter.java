@@ -0,0 +1,228 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * BulkImporter adds the transactions of an outside file (a bank feed, an export, ...) to the ledger
+ *
+ * the columns are the same as in our own file: date, time, description, vendor, amount
+ * they can be separated with | (like transactions.csv) or with , (normal CSV, where a value
+ * in double quotes may contain commas), a header line is skipped
+ * a positive amount is a deposit, a negative one a payment
+ *
+ * every row is checked with the same rules as the deposit and payment screens (InputValidator),
+ * the lines are read in chunks and each chunk is checked in parallel, problems are collected
+ * per line, and at the end all good rows are written as one commit (FileManager.writeTransactions)
+ */
+public class BulkImporter {
+    // lines checked together, big files are never held in memory as text all at once
+    private static final int CHUNK_LINES = 64 * 1024;
+
+    /**
+     * what happened during an import
+     */
+    public static class Result {
+        private final int imported;
+        private final int skipped;
+        private final List<String> errors;
+        private final long millis;
+        private final boolean written;
+        private final List<Transaction> checked; // the good rows of a check, kept for write(), null otherwise
+
+        private Result(int imported, int skipped, List<String> errors, long millis, boolean written,
+                       List<Transaction> checked) {
+            this.imported = imported;
+            this.skipped = skipped;
+            this.errors = errors;
+            this.millis = millis;
+            this.written = written;
+            this.checked = checked;
+        }
+
+        // number of good rows (written to the ledger unless it was only a check)
+        public int getImported() {
+            return imported;
+        }
+        public int getSkipped() {
+            return skipped;
+        }
+        // one message per bad line, like "line 12: Date cannot be empty!"
+        public List<String> getErrors() {
+            return errors;
+        }
+        public long getMillis() {
+            return millis;
+        }
+        // false if the rows were only checked, or if writing them failed
+        public boolean isWritten() {
+            return written;
+        }
+    }
+
+    /**
+     * reads and checks every line, then writes the good ones to the ledger in one commit
+     * with write = false the file is only checked (nothing is added)
+     */
+    public static Result importLines(BufferedReader reader, boolean write) throws IOException {
+        long start = System.nanoTime();
+        List<Transaction> transactions = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+
+        List<String> chunk = new ArrayList<>(CHUNK_LINES);
+        long firstLineNumber = 1;
+        long lineNumber = 0;
+        char delimiter = 0; // decided by the first line that isn't empty
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (delimiter == 0 && !line.isBlank()) {
+                delimiter = line.indexOf('|') >= 0 ? '|' : ',';
+                if (isHeader(line, delimiter)) {
+                    line = ""; // keeps the line numbers right, blank lines are skipped
+                }
+            }
+            chunk.add(line);
+            if (chunk.size() == CHUNK_LINES) {
+                checkChunk(chunk, firstLineNumber, delimiter, transactions, errors);
+                chunk.clear();
+                firstLineNumber = lineNumber + 1;
+            }
+        }
+        checkChunk(chunk, firstLineNumber, delimiter, transactions, errors);
+
+        boolean written = write && FileManager.writeTransactions(transactions);
+        long nanos = System.nanoTime() - start;
+        Metrics.record(write ? "import" : "import.check", nanos);
+        Metrics.count("import.rows", transactions.size());
+        Metrics.count("import.skipped", errors.size());
+        long millis = nanos / 1_000_000;
+        return new Result(transactions.size(), errors.size(), errors, millis, written, write ? null : transactions);
+    }
+
+    /**
+     * writes the good rows of a check (importLines with write = false) to the ledger in one commit,
+     * so a "check, ask, then import" doesn't read and check the whole file a second time
+     */
+    public static Result write(Result check) {
+        if (check.checked == null) {
+            throw new IllegalStateException("only the result of a check can be written");
+        }
+        long start = System.nanoTime();
+        boolean written = FileManager.writeTransactions(check.checked);
+        long nanos = System.nanoTime() - start;
+        Metrics.record("import", nanos);
+        return new Result(check.imported, check.skipped, check.errors, nanos / 1_000_000, written, null);
+    }
+
+    // checks the lines of one chunk in parallel, the results are collected in file order
+    private static void checkChunk(List<String> chunk, long firstLineNumber, char delimiter,
+                                   List<Transaction> transactions, List<String> errors) {
+        Transaction[] rows = new Transaction[chunk.size()];
+        String[] problems = new String[chunk.size()];
+        IntStream.range(0, chunk.size()).parallel().forEach(i -> {
+            String line = chunk.get(i);
+            if (line.isBlank()) {
+                return;
+            }
+            try {
+                rows[i] = toTransaction(line, delimiter);
+            } catch (IllegalArgumentException e) {
+                problems[i] = e.getMessage();
+            }
+        });
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] != null) {
+                transactions.add(rows[i]);
+            } else if (problems[i] != null) {
+                errors.add("line " + (firstLineNumber + i) + ": " + problems[i]);
+            }
+        }
+    }
+
+    /**
+     * checks one line with the InputValidator rules and turns it into a Transaction
+     * throws an IllegalArgumentException with the reason if the line isn't good
+     */
+    static Transaction toTransaction(String line, char delimiter) {
+        List<String> fields = delimiter == '|' ? splitPipes(line) : splitCsv(line);
+        if (fields.size() != 5) {
+            throw new IllegalArgumentException("Expected 5 columns (date, time, description, vendor, amount) but found "
+                    + fields.size());
+        }
+        String date = fields.get(0).trim();
+        String time = fields.get(1).trim();
+        String description = fields.get(2).trim();
+        String vendor = fields.get(3).trim();
+        String amount = fields.get(4).trim();
+
+        check(InputValidator.dateError(date));
+        check(InputValidator.timeError(time));
+        check(InputValidator.descriptionError(description));
+        check(InputValidator.vendorError(vendor));
+        check(InputValidator.signedAmountError(amount));
+        // the ledger itself uses | between the columns
+        if (description.indexOf('|') >= 0 || vendor.indexOf('|') >= 0) {
+            throw new IllegalArgumentException("Description and vendor can't contain '|'");
+        }
+
+        return new Transaction(LocalDate.parse(date), LocalTime.parse(time), description, vendor,
+                Money.parse(amount));
+    }
+
+    private static void check(String error) {
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    // a first line like "Date|Time|Description|Vendor|Amount" (any case, any separator)
+    private static boolean isHeader(String line, char delimiter) {
+        List<String> fields = delimiter == '|' ? splitPipes(line) : splitCsv(line);
+        return !fields.isEmpty() && fields.get(0).trim().equalsIgnoreCase("date");
+    }
+
+    private static List<String> splitPipes(String line) {
+        List<String> fields = new ArrayList<>(5);
+        int start = 0;
+        int pipe;
+        while ((pipe = line.indexOf('|', start)) >= 0) {
+            fields.add(line.substring(start, pipe));
+            start = pipe + 1;
+        }
+        fields.add(line.substring(start));
+        return fields;
+    }
+
+    // splits on commas, a value in double quotes can contain commas and "" for a quote
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,432 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * CommandLine runs reports, searches and imports without the menus
+ * Main uses it when the program gets arguments, so scripts don't have to pipe keystrokes
+ * into the Scanner anymore
+ *
+ *   report mtd|prev-month|ytd|prev-year [--out FILE]
+ *   search [--vendor V] [--description D] [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--amount A] [--out FILE]
+ *   import FILE [--check]  adds the transactions of a CSV or | file (or .gz) to the ledger
+ *                          in one commit, --check only reports the bad lines (see BulkImporter)
+ *   batch FILE             runs one command per line (FILE can be - for stdin), the ledger is
+ *                          only loaded once for all of them
+ *   metrics                prints the timings and counters so far (see Metrics), handy as
+ *                          the last line of a batch
+ *   analytics [--top N] [--from yyyy-MM-dd] [--to yyyy-MM-dd]
+ *                          prints the top vendors and the amount percentiles (see LedgerAnalytics)
+ *
+ * the transactions go to stdout as CSV (or to the --out file, gzipped if it ends with .gz)
+ * totals, warnings and errors go to stderr, so stdout can be piped straight into another tool
+ *
+ * exit codes: 0 ok, 1 something failed (or some import lines were bad), 2 bad command/options
+ */
+public class CommandLine {
+    public static final int OK = 0;
+    public static final int FAILED = 1;
+    public static final int BAD_USAGE = 2;
+
+    // set once a command added something to the ledger, only then is there anything to close
+    private static boolean wrote;
+
+    /**
+     * runs one command and returns the exit code
+     * if it added transactions (import, or an import inside a batch) the journal is moved into
+     * the file and a backup is made at the end, like Main does after the menus
+     * reports and searches only read, so they don't lock, compact or back up anything
+     */
+    public static int run(String[] args) {
+        PrintStream data = System.out;
+        // loading and exporting print their messages to System.out, those belong on stderr here
+        System.setOut(System.err);
+        wrote = false;
+        try {
+            return execute(args, data);
+        } finally {
+            if (wrote) {
+                FileManager.close();
+            } else {
+                BackupManager.shutdown(); // only waits if loading started a backup
+            }
+            System.setOut(data);
+        }
+    }
+
+    // runs one command, the transactions are written to data
+    private static int execute(String[] args, PrintStream data) {
+        if (args.length == 0) {
+            printUsage();
+            return BAD_USAGE;
+        }
+        try {
+            switch (args[0]) {
+                case "report":
+                    return report(args, data);
+                case "search":
+                    return search(args, data);
+                case "import":
+                    return importFile(args);
+                case "batch":
+                    return batch(args, data);
+                case "metrics":
+                    return metrics(args, data);
+                case "analytics":
+                    return analytics(args, data);
+                case "help":
+                case "--help":
+                case "-h":
+                    printUsage();
+                    return OK;
+                default:
+                    System.err.println("Error: unknown command '" + args[0] + "'");
+                    printUsage();
+                    return BAD_USAGE;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return BAD_USAGE;
+        }
+    }
+
+    /**
+     * report mtd|prev-month|ytd|prev-year, the same periods as the reports menu
+     */
+    private static int report(String[] args, PrintStream data) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("report needs a period: mtd, prev-month, ytd or prev-year");
+        }
+        Map<String, String> options = parseOptions(args, 2, "--out");
+
+        LocalDate today = LocalDate.now();
+        LocalDate start;
+        LocalDate end;
+        switch (args[1]) {
+            case "mtd":
+                start = today.withDayOfMonth(1);
+                end = today;
+                break;
+            case "prev-month":
+                YearMonth previousMonth = YearMonth.from(today).minusMonths(1);
+                start = previousMonth.atDay(1);
+                end = previousMonth.atEndOfMonth();
+                break;
+            case "ytd":
+                start = LocalDate.of(today.getYear(), 1, 1);
+                end = today;
+                break;
+            case "prev-year":
+                start = LocalDate.of(today.getYear() - 1, 1, 1);
+                end = LocalDate.of(today.getYear() - 1, 12, 31);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown report '" + args[1]
+                        + "', use mtd, prev-month, ytd or prev-year");
+        }
+
+        // the rows come straight out of the date index (newest first), the totals from the rollups
+        // (read locked until they are written, see LedgerRepository)
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            Metrics.Timer timer = Metrics.start("report." + args[1]);
+            DateIndex index = LedgerRepository.getDateIndex();
+            TransactionStore store = index.getStore();
+            DateIndex.Range range = index.between(start, end);
+            PeriodTotals totals = LedgerRepository.getRollup().between(start, end, index);
+            timer.stop();
+            Iterator<Transaction> transactions = IntStream.range(0, range.size())
+                    .mapToObj(position -> store.get(range.get(position)))
+                    .iterator();
+
+            return writeResults(transactions, options.get("--out"), data,
+                    args[1] + " " + start + " to " + end, totals);
+        } finally {
+            reading.unlock();
+        }
+    }
+
+    /**
+     * search with any mix of filters, the same engine as the custom search (see CompiledQuery)
+     */
+    private static int search(String[] args, PrintStream data) {
+        Map<String, String> options = parseOptions(args, 1,
+                "--vendor", "--description", "--from", "--to", "--amount", "--out");
+
+        Long amountCents = null;
+        if (options.containsKey("--amount")) {
+            try {
+                amountCents = Money.parse(options.get("--amount"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid amount '" + options.get("--amount") + "'");
+            }
+        }
+        SearchCriteria criteria = new SearchCriteria(
+                parseDate(options.get("--from")),
+                parseDate(options.get("--to")),
+                options.get("--description"),
+                options.get("--vendor"),
+                amountCents);
+
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            CompiledQuery query = CompiledQuery.compile(criteria);
+            TransactionStore store = query.getStore();
+            int[] rows = query.run(); // already newest first
+
+            PeriodTotals totals = new PeriodTotals();
+            for (int row : rows) {
+                totals.add(store.getAmountCents(row));
+            }
+            return writeResults(store.stream(rows).iterator(), options.get("--out"), data, "search", totals);
+        } finally {
+            reading.unlock();
+        }
+    }
+
+    /**
+     * import FILE [--check], see BulkImporter for the file format and the rules
+     * bad lines are listed on stderr, the good ones are added in one commit
+     * (with --check nothing is added, the file is only checked)
+     */
+    private static int importFile(String[] args) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("import needs a file: import FILE [--check]");
+        }
+        String fileName = args[1];
+        boolean checkOnly = false;
+        for (int i = 2; i < args.length; i++) {
+            if (!args[i].equals("--check")) {
+                throw new IllegalArgumentException("unknown option '" + args[i] + "' for import, allowed: --check");
+            }
+            checkOnly = true;
+        }
+
+        BulkImporter.Result result;
+        try (BufferedReader reader = openReader(fileName)) {
+            result = BulkImporter.importLines(reader, !checkOnly);
+        } catch (IOException e) {
+            System.err.println("Error reading " + fileName + ": " + e.getMessage());
+            return FAILED;
+        }
+        if (result.isWritten() && result.getImported() > 0) {
+            wrote = true;
+        }
+        for (String error : result.getErrors()) {
+            System.err.println("Warning: " + fileName + " " + error);
+        }
+        if (!checkOnly && !result.isWritten() && result.getImported() > 0) {
+            return FAILED;
+        }
+        System.err.println((checkOnly ? "Checked " : "Imported ") + result.getImported()
+                + " transactions from " + fileName + " in " + result.getMillis() + " ms"
+                + (result.getSkipped() > 0 ? ", skipped " + result.getSkipped() + " bad lines." : "."));
+        return result.getSkipped() > 0 ? FAILED : OK;
+    }
+
+    /**
+     * batch FILE, one command per line (blank lines and lines starting with # are skipped)
+     * values with spaces go in double quotes, like: search --vendor "Arasaka Corp"
+     * returns the worst exit code of all the commands
+     */
+    private static int batch(String[] args, PrintStream data) {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("batch needs one file (or - for stdin): batch FILE");
+        }
+        int worst = OK;
+        try (BufferedReader reader = openReader(args[1])) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] command = splitCommand(line);
+                int exitCode;
+                if (command[0].equals("batch")) {
+                    System.err.println("Error: batch files can't run other batch files");
+                    exitCode = BAD_USAGE;
+                } else {
+                    exitCode = execute(command, data);
+                }
+                if (exitCode != OK) {
+                    System.err.println("Line " + lineNumber + " failed (exit code " + exitCode + "): " + line);
+                    worst = Math.max(worst, exitCode);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading " + args[1] + ": " + e.getMessage());
+            return FAILED;
+        }
+        return worst;
+    }
+
+    /**
+     * metrics, the same table as Reports > Metrics, to stdout
+     */
+    private static int metrics(String[] args, PrintStream data) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("metrics takes no options");
+        }
+        RenderBuffer frame = new RenderBuffer(4096);
+        Metrics.appendReport(frame);
+        frame.print(data);
+        return data.checkError() ? FAILED : OK;
+    }
+
+    /**
+     * analytics, the same tables as Reports > Analytics, to stdout
+     * without --from/--to it covers the whole ledger
+     */
+    private static int analytics(String[] args, PrintStream data) {
+        Map<String, String> options = parseOptions(args, 1, "--top", "--from", "--to");
+        int top = LedgerAnalytics.DEFAULT_TOP;
+        if (options.containsKey("--top")) {
+            try {
+                top = Integer.parseInt(options.get("--top").trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid --top '" + options.get("--top") + "', use a number");
+            }
+        }
+        LocalDate from = parseDate(options.get("--from"));
+        LocalDate to = parseDate(options.get("--to"));
+
+        LedgerAnalytics analytics;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            DateIndex.Range range = index.between(from == null ? CompiledQuery.EARLIEST : from,
+                    to == null ? CompiledQuery.LATEST : to);
+            analytics = LedgerAnalytics.of(index.getStore(), range, top);
+        } finally {
+            reading.unlock();
+        }
+
+        RenderBuffer frame = new RenderBuffer(8192);
+        analytics.appendReport(frame);
+        frame.print(data);
+        return data.checkError() ? FAILED : OK;
+    }
+
+    // writes the transactions to the --out file or to stdout, then the totals to stderr
+    private static int writeResults(Iterator<Transaction> transactions, String outFile, PrintStream data,
+                                    String label, PeriodTotals totals) {
+        if (outFile != null) {
+            if (FileManager.exportTransactions(transactions, outFile) < 0) {
+                return FAILED;
+            }
+        } else {
+            try {
+                FileManager.exportTransactions(transactions, data);
+            } catch (IOException e) {
+                System.err.println("Error writing output: " + e.getMessage());
+                return FAILED;
+            }
+            if (data.checkError()) {
+                return FAILED; // stdout went away, like when piped into head
+            }
+        }
+        System.err.println(label + ": " + totals.getCount() + " transactions"
+                + ", deposits $" + Money.formatWithCommas(totals.getDepositCents())
+                + " (" + totals.getDepositCount() + ")"
+                + ", payments $" + Money.formatWithCommas(totals.getPaymentCents())
+                + " (" + totals.getPaymentCount() + ")"
+                + ", balance $" + Money.formatWithCommas(totals.getBalanceCents()));
+        return OK;
+    }
+
+    // reads "--name value" pairs starting at args[from], only the given names are allowed
+    private static Map<String, String> parseOptions(String[] args, int from, String... allowed) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = from; i < args.length; i += 2) {
+            String name = args[i];
+            if (!List.of(allowed).contains(name)) {
+                throw new IllegalArgumentException("unknown option '" + name + "' for " + args[0]
+                        + ", allowed: " + String.join(" ", allowed));
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("option " + name + " needs a value");
+            }
+            options.put(name, args[i + 1]);
+        }
+        return options;
+    }
+
+    // null stays null (no filter)
+    private static LocalDate parseDate(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(text.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date '" + text + "', use yyyy-MM-dd");
+        }
+    }
+
+    // "-" is stdin, names ending with .gz are unzipped while reading
+    private static BufferedReader openReader(String fileName) throws IOException {
+        InputStream in = fileName.equals("-") ? System.in : Files.newInputStream(Paths.get(fileName));
+        if (fileName.toLowerCase().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    // splits a batch line on spaces, text in double quotes stays together
+    static String[] splitCommand(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage:");
+        System.err.println("  report mtd|prev-month|ytd|prev-year [--out FILE]");
+        System.err.println("  search [--vendor V] [--description D] [--from yyyy-MM-dd] [--to yyyy-MM-dd]");
+        System.err.println("         [--amount A] [--out FILE]");
+        System.err.println("  import FILE [--check]");
+        System.err.println("  batch FILE|-");
+        System.err.println("  metrics");
+        System.err.println("  analytics [--top N] [--from yyyy-MM-dd] [--to yyyy-MM-dd]");
+        System.err.println("Transactions are written to stdout as CSV, or to FILE (gzipped if it ends with .gz).");
+    }
+}
@@ -0,0 +1,185 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * CompiledQuery turns SearchCriteria into a plan that is cheap to run
+ *
+ * everything is worked out once, before looking at any row:
+ *  - dates become epoch days and the amount becomes cents
+ *  - text filters become "which distinct vendors/descriptions match" masks from the SearchIndex
+ *  - the filter with the fewest matching rows (date range from the DateIndex, or a text
+ *    filter from its posting lists) is used to produce the candidate rows
+ *  - the other filters run on those candidates, most selective first, and stop at the first miss
+ *
+ * results always come back newest first
+ */
+public class CompiledQuery {
+    // the ends of a date range that has no start or end date (CommandLine uses them too)
+    static final LocalDate EARLIEST = LocalDate.of(-999_999, 1, 1);
+    static final LocalDate LATEST = LocalDate.of(999_999, 12, 31);
+
+    // which index produces the candidate rows
+    private enum Source { DATE_RANGE, VENDOR, DESCRIPTION }
+
+    private final DateIndex dateIndex;
+    private final SearchIndex searchIndex;
+    private final SearchCriteria criteria;
+    private final Source source;
+    private final IntPredicate[] filters; // already in the order they should run
+
+    private CompiledQuery(DateIndex dateIndex, SearchIndex searchIndex, SearchCriteria criteria,
+                          Source source, IntPredicate[] filters) {
+        this.dateIndex = dateIndex;
+        this.searchIndex = searchIndex;
+        this.criteria = criteria;
+        this.source = source;
+        this.filters = filters;
+    }
+
+    /**
+     * compiles the criteria against the current in-memory ledger
+     * hold LedgerRepository.lockForReading() from here until the results are used,
+     * rows appended in between would be missing from the plan
+     */
+    public static CompiledQuery compile(SearchCriteria criteria) {
+        // the search index is built on first use, a date or amount search doesn't need it
+        boolean needsText = criteria.getVendor() != null || criteria.getDescription() != null;
+        return compile(criteria, LedgerRepository.getDateIndex(),
+                needsText ? LedgerRepository.getSearchIndex() : null);
+    }
+
+    /**
+     * compiles the criteria against the given indexes (they must be over the same store)
+     * searchIndex is only used for vendor and description filters, it can be null without them
+     */
+    public static CompiledQuery compile(SearchCriteria criteria, DateIndex dateIndex, SearchIndex searchIndex) {
+        TransactionStore store = dateIndex.getStore();
+        List<Filter> candidates = new ArrayList<>();
+
+        // date range: counting the matching rows is two binary searches
+        if (criteria.hasDateFilter()) {
+            long startDay = startOf(criteria).toEpochDay();
+            long endDay = endOf(criteria).toEpochDay();
+            int count = startDay > endDay ? 0 : dateIndex.between(startOf(criteria), endOf(criteria)).size();
+            candidates.add(new Filter(Source.DATE_RANGE, count,
+                    row -> store.getEpochDay(row) >= startDay && store.getEpochDay(row) <= endDay));
+        }
+
+        // text filters: which distinct strings match is decided here, rows just look up their id
+        if (criteria.getVendor() != null) {
+            boolean[] vendorMatches = searchIndex.vendorIdsContaining(criteria.getVendor());
+            candidates.add(new Filter(Source.VENDOR, searchIndex.countVendorContaining(criteria.getVendor()),
+                    row -> vendorMatches[store.getVendorId(row)]));
+        }
+        if (criteria.getDescription() != null) {
+            boolean[] descriptionMatches = searchIndex.descriptionIdsContaining(criteria.getDescription());
+            candidates.add(new Filter(Source.DESCRIPTION,
+                    searchIndex.countDescriptionContaining(criteria.getDescription()),
+                    row -> descriptionMatches[store.getDescriptionId(row)]));
+        }
+
+        // exact amount: no index for it, but an exact match is usually very rare and
+        // comparing two longs is the cheapest check there is, so it goes first
+        Filter amountFilter = null;
+        if (criteria.getAmountCents() != null) {
+            long amountCents = criteria.getAmountCents();
+            amountFilter = new Filter(null, 0, row -> store.getAmountCents(row) == amountCents);
+        }
+
+        // the most selective indexed filter produces the rows, the others become checks
+        candidates.sort((a, b) -> Integer.compare(a.estimatedRows, b.estimatedRows));
+        Source source = candidates.isEmpty() ? Source.DATE_RANGE : candidates.get(0).source;
+        List<IntPredicate> checks = new ArrayList<>();
+        if (amountFilter != null) {
+            checks.add(amountFilter.test);
+        }
+        for (int i = 1; i < candidates.size(); i++) {
+            checks.add(candidates.get(i).test);
+        }
+        return new CompiledQuery(dateIndex, searchIndex, criteria, source,
+                checks.toArray(new IntPredicate[0]));
+    }
+
+    public TransactionStore getStore() {
+        return dateIndex.getStore();
+    }
+
+    /**
+     * runs the query and returns the matching rows, newest first
+     */
+    public int[] run() {
+        Metrics.Timer timer = Metrics.start("search");
+        int[] candidates = candidateRows();
+        int[] matches = new int[candidates.length];
+        int count = 0;
+        for (int row : candidates) {
+            if (passes(row)) {
+                matches[count++] = row;
+            }
+        }
+        int[] rows = Arrays.copyOf(matches, count);
+        if (source != Source.DATE_RANGE) {
+            dateIndex.sortNewestFirst(rows); // posting lists are in file order
+        }
+        timer.stop();
+        return rows;
+    }
+
+    /**
+     * a short description of how the query will run (handy when checking saved queries)
+     */
+    public String explain() {
+        return "scan " + source.name().toLowerCase() + " candidates, then "
+                + filters.length + " check(s)";
+    }
+
+    private boolean passes(int row) {
+        for (IntPredicate filter : filters) {
+            if (!filter.test(row)) {
+                return false; // no need to run the other filters
+            }
+        }
+        return true;
+    }
+
+    private int[] candidateRows() {
+        switch (source) {
+            case VENDOR:
+                return searchIndex.rowsWithVendorContaining(criteria.getVendor());
+            case DESCRIPTION:
+                return searchIndex.rowsWithDescriptionContaining(criteria.getDescription());
+            default:
+                // date range (or no filters at all): comes out of the date index newest first
+                if (startOf(criteria).isAfter(endOf(criteria))) {
+                    return new int[0];
+                }
+                return dateIndex.between(startOf(criteria), endOf(criteria)).toArray();
+        }
+    }
+
+    private static LocalDate startOf(SearchCriteria criteria) {
+        return criteria.getStartDate() != null ? criteria.getStartDate() : EARLIEST;
+    }
+
+    private static LocalDate endOf(SearchCriteria criteria) {
+        return criteria.getEndDate() != null ? criteria.getEndDate() : LATEST;
+    }
+
+    /**
+     * one filter of the query and how many rows we expect it to let through
+     */
+    private static class Filter {
+        final Source source;
+        final int estimatedRows;
+        final IntPredicate test;
+
+        Filter(Source source, int estimatedRows, IntPredicate test) {
+            this.source = source;
+            this.estimatedRows = estimatedRows;
+            this.test = test;
+        }
+    }
+}
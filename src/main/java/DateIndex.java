@@ -0,0 +1,231 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * DateIndex keeps the rows of a TransactionStore sorted by date and time
+ * so a date range is found with two binary searches instead of checking every row,
+ * and the rows come out newest first without sorting them again
+ *
+ * rows with the same date and time stay in file order, just like the old stable sort did
+ */
+public class DateIndex {
+    private static final int SECOND_BITS = 17; // 86399 seconds in a day fit in 17 bits
+
+    private final TransactionStore store;
+    private int[] sortedRows; // oldest first
+    private int size;
+
+    /**
+     * builds the index over every row currently in the store
+     */
+    public DateIndex(TransactionStore store) {
+        this.store = store;
+        this.sortedRows = store.allRows();
+        this.size = sortedRows.length;
+        sortOldestFirst(store, sortedRows);
+    }
+
+    /**
+     * the store this index points into
+     */
+    public TransactionStore getStore() {
+        return store;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * adds a row that was just appended to the store
+     * new transactions are usually the newest ones, so this is normally a plain append
+     */
+    public void add(int row) {
+        // among equal date/time the newer row sorts first (so it comes last when reading newest first)
+        int position = lowerBound(key(store.getEpochDay(row), store.getSecondOfDay(row)));
+        if (size == sortedRows.length) {
+            sortedRows = Arrays.copyOf(sortedRows, Math.max(16, size + (size >> 1)));
+        }
+        System.arraycopy(sortedRows, position, sortedRows, position + 1, size - position);
+        sortedRows[position] = row;
+        size++;
+    }
+
+    /**
+     * adds rows that were just appended to the store all at once (like an import)
+     * the new rows are sorted on their own and then merged in with one pass from the end,
+     * so a back-dated batch moves the index once instead of once per row
+     */
+    public void addAll(int[] rows) {
+        if (rows.length == 0) {
+            return;
+        }
+        int[] added = rows.clone();
+        sortOldestFirst(store, added);
+        if (size + added.length > sortedRows.length) {
+            sortedRows = Arrays.copyOf(sortedRows, Math.max(size + added.length, size + (size >> 1)));
+        }
+        // the later of the two goes last, among equal date/time that is the row already in
+        // the index (the new rows have higher row numbers, and those sort first, like add() does)
+        // once the new rows are all placed, the rest of the index is already where it belongs
+        int from = size - 1;
+        int next = added.length - 1;
+        int to = size + added.length - 1;
+        while (next >= 0) {
+            if (from >= 0 && keyOf(sortedRows[from]) >= keyOf(added[next])) {
+                sortedRows[to--] = sortedRows[from--];
+            } else {
+                sortedRows[to--] = added[next--];
+            }
+        }
+        size += added.length;
+    }
+
+    /**
+     * every row, newest first
+     */
+    public Range all() {
+        return new Range(0, size);
+    }
+
+    /**
+     * rows dated from startDate to endDate (both inclusive), newest first
+     */
+    public Range between(LocalDate startDate, LocalDate endDate) {
+        int from = lowerBound(key(startDate.toEpochDay(), 0));
+        int to = lowerBound(key(endDate.toEpochDay() + 1, 0));
+        return new Range(from, Math.max(from, to));
+    }
+
+    /**
+     * sorts the given rows newest first, using the same order as the index
+     */
+    public void sortNewestFirst(int[] rows) {
+        sortOldestFirst(store, rows);
+        for (int i = 0, j = rows.length - 1; i < j; i++, j--) {
+            int swap = rows[i];
+            rows[i] = rows[j];
+            rows[j] = swap;
+        }
+    }
+
+    // first position whose row is at or after the given date/time key
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keyOf(sortedRows[middle]) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // date and time squeezed into one number that sorts the same way
+    private static long key(long epochDay, int secondOfDay) {
+        return (epochDay << SECOND_BITS) | secondOfDay;
+    }
+
+    private long keyOf(int row) {
+        return key(store.getEpochDay(row), store.getSecondOfDay(row));
+    }
+
+    /**
+     * sorts rows oldest first, equal date/time puts the higher row number first
+     *
+     * the day offset, second and (reversed) row number are packed into one long so
+     * Arrays.sort on primitives does the work, that only fails for ledgers spanning
+     * thousands of years, which fall back to a normal comparator sort
+     */
+    private static void sortOldestFirst(TransactionStore store, int[] rows) {
+        if (rows.length < 2) {
+            return;
+        }
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        int maxRow = 0;
+        for (int row : rows) {
+            minDay = Math.min(minDay, store.getEpochDay(row));
+            maxDay = Math.max(maxDay, store.getEpochDay(row));
+            maxRow = Math.max(maxRow, row);
+        }
+        int rowBits = 32 - Integer.numberOfLeadingZeros(maxRow);
+        int dayBits = 63 - SECOND_BITS - rowBits;
+        if ((long) maxDay - minDay >= (1L << dayBits)) {
+            sortWithComparator(store, rows);
+            return;
+        }
+
+        long rowMask = (1L << rowBits) - 1;
+        long[] packed = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            long day = store.getEpochDay(row) - minDay;
+            packed[i] = (day << (SECOND_BITS + rowBits))
+                    | ((long) store.getSecondOfDay(row) << rowBits)
+                    | (rowMask - row);
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = (int) (rowMask - (packed[i] & rowMask));
+        }
+    }
+
+    private static void sortWithComparator(TransactionStore store, int[] rows) {
+        Integer[] boxed = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            boxed[i] = rows[i];
+        }
+        Arrays.sort(boxed, (a, b) -> {
+            long keyA = key(store.getEpochDay(a), store.getSecondOfDay(a));
+            long keyB = key(store.getEpochDay(b), store.getSecondOfDay(b));
+            return keyA != keyB ? Long.compare(keyA, keyB) : Integer.compare(b, a);
+        });
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = boxed[i];
+        }
+    }
+
+    /**
+     * a slice of the index, read newest first
+     * it doesn't copy anything, so it is only valid until the next add()
+     */
+    public class Range {
+        private final int from;
+        private final int to;
+
+        private Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        public boolean isEmpty() {
+            return to == from;
+        }
+
+        /**
+         * the row at the given position, 0 is the newest
+         */
+        public int get(int position) {
+            return sortedRows[to - 1 - position];
+        }
+
+        /**
+         * copies the rows out, newest first
+         */
+        public int[] toArray() {
+            int[] rows = new int[size()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = sortedRows[to - 1 - i];
+            }
+            return rows;
+        }
+    }
+}
@@ -10,182 +10,262 @@ public class DisplayHelper {
     private static final String RESET = "\u001B[0m";
     private static final String BOLD = "\u001B[1m";
 
+    private static final String TABLE_HEADER = String.format("%-12s %-10s %-8s %-35s %-25s %12s",
+            "DATE", "TIME", "TYPE", "DESCRIPTION", "VENDOR", "AMOUNT");
+
     // Shows the welcome screen when app starts
     public static void showWelcomeScreen() {
-        clearScreen();
-
-        System.out.println(CYAN + BOLD);
-        System.out.println("╔══════════════════════════════════════════════════════════════════════╗");
-        System.out.println("║                                                                      ║");
-        System.out.println("║                ███╗   ██╗██╗ ██████╗ ██╗  ██╗████████╗               ║");
-        System.out.println("║                ████╗  ██║██║██╔════╝ ██║  ██║╚══██╔══╝               ║");
-        System.out.println("║                ██╔██╗ ██║██║██║  ███╗███████║   ██║                  ║");
-        System.out.println("║                ██║╚██╗██║██║██║   ██║██╔══██║   ██║                  ║");
-        System.out.println("║                ██║ ╚████║██║╚██████╔╝██║  ██║   ██║                  ║");
-        System.out.println("║                ╚═╝  ╚═══╝╚═╝ ╚═════╝ ╚═╝  ╚═╝   ╚═╝                  ║");
-        System.out.println("║                                                                      ║");
-        System.out.println("║                     ██████╗██╗████████╗██╗   ██╗                     ║");
-        System.out.println("║                    ██╔════╝██║╚══██╔══╝╚██╗ ██╔╝                     ║");
-        System.out.println("║                    ██║     ██║   ██║    ╚████╔╝                      ║");
-        System.out.println("║                    ██║     ██║   ██║     ╚██╔╝                       ║");
-        System.out.println("║                    ╚██████╗██║   ██║      ██║                        ║");
-        System.out.println("║                     ╚═════╝╚═╝   ╚═╝      ╚═╝                        ║");
-        System.out.println("║                                                                      ║");
-        System.out.println("║    ███╗   ███╗ █████╗ ███╗   ██╗ █████╗  ██████╗ ███████╗██████╗     ║");
-        System.out.println("║    ████╗ ████║██╔══██╗████╗  ██║██╔══██╗██╔════╝ ██╔════╝██╔══██╗    ║");
-        System.out.println("║    ██╔████╔██║███████║██╔██╗ ██║███████║██║  ███╗█████╗  ██████╔╝    ║");
-        System.out.println("║    ██║╚██╔╝██║██╔══██║██║╚██╗██║██╔══██║██║   ██║██╔══╝  ██╔══██╗    ║");
-        System.out.println("║    ██║ ╚═╝ ██║██║  ██║██║ ╚████║██║  ██║╚██████╔╝███████╗██║  ██║    ║");
-        System.out.println("║    ╚═╝     ╚═╝╚═╝  ╚═╝╚═╝  ╚═══╝╚═╝  ╚═╝ ╚═════╝ ╚══════╝╚═╝  ╚═╝    ║");
-        System.out.println("║                                                                      ║");
-        System.out.println("║                   ~ Financial Tracking System v1.0 ~                 ║");
-        System.out.println("║                   ~ Wake the f*** up, Samurai!!! ~                   ║");
-        System.out.println("║                                                                      ║");
-        System.out.println("╚══════════════════════════════════════════════════════════════════════╝");
-        System.out.println(RESET);
+        RenderBuffer frame = new RenderBuffer(8192);
+        appendClearScreen(frame);
+
+        frame.line(CYAN + BOLD);
+        frame.line("╔══════════════════════════════════════════════════════════════════════╗");
+        frame.line("║                                                                      ║");
+        frame.line("║                ███╗   ██╗██╗ ██████╗ ██╗  ██╗████████╗               ║");
+        frame.line("║                ████╗  ██║██║██╔════╝ ██║  ██║╚══██╔══╝               ║");
+        frame.line("║                ██╔██╗ ██║██║██║  ███╗███████║   ██║                  ║");
+        frame.line("║                ██║╚██╗██║██║██║   ██║██╔══██║   ██║                  ║");
+        frame.line("║                ██║ ╚████║██║╚██████╔╝██║  ██║   ██║                  ║");
+        frame.line("║                ╚═╝  ╚═══╝╚═╝ ╚═════╝ ╚═╝  ╚═╝   ╚═╝                  ║");
+        frame.line("║                                                                      ║");
+        frame.line("║                     ██████╗██╗████████╗██╗   ██╗                     ║");
+        frame.line("║                    ██╔════╝██║╚══██╔══╝╚██╗ ██╔╝                     ║");
+        frame.line("║                    ██║     ██║   ██║    ╚████╔╝                      ║");
+        frame.line("║                    ██║     ██║   ██║     ╚██╔╝                       ║");
+        frame.line("║                    ╚██████╗██║   ██║      ██║                        ║");
+        frame.line("║                     ╚═════╝╚═╝   ╚═╝      ╚═╝                        ║");
+        frame.line("║                                                                      ║");
+        frame.line("║    ███╗   ███╗ █████╗ ███╗   ██╗ █████╗  ██████╗ ███████╗██████╗     ║");
+        frame.line("║    ████╗ ████║██╔══██╗████╗  ██║██╔══██╗██╔════╝ ██╔════╝██╔══██╗    ║");
+        frame.line("║    ██╔████╔██║███████║██╔██╗ ██║███████║██║  ███╗█████╗  ██████╔╝    ║");
+        frame.line("║    ██║╚██╔╝██║██╔══██║██║╚██╗██║██╔══██║██║   ██║██╔══╝  ██╔══██╗    ║");
+        frame.line("║    ██║ ╚═╝ ██║██║  ██║██║ ╚████║██║  ██║╚██████╔╝███████╗██║  ██║    ║");
+        frame.line("║    ╚═╝     ╚═╝╚═╝  ╚═╝╚═╝  ╚═══╝╚═╝  ╚═╝ ╚═════╝ ╚══════╝╚═╝  ╚═╝    ║");
+        frame.line("║                                                                      ║");
+        frame.line("║                   ~ Financial Tracking System v1.0 ~                 ║");
+        frame.line("║                   ~ Wake the f*** up, Samurai!!! ~                   ║");
+        frame.line("║                                                                      ║");
+        frame.line("╚══════════════════════════════════════════════════════════════════════╝");
+        frame.line(RESET);
+        frame.print();
 
         pause(2000); // wait 2 seconds for effect
     }
     //displays the home screen menu
     public static void showHomeScreen() {
-        clearScreen();
-        printHeader("NIGHT CITY FINANCIAL TERMINAL - HOME");
+        RenderBuffer frame = new RenderBuffer(2048);
+        appendClearScreen(frame);
+        appendHeader(frame, "NIGHT CITY FINANCIAL TERMINAL - HOME");
 
-        System.out.println(YELLOW + "\n  What would you like to do, choom?\n" + RESET);
-        System.out.println("  [D] Add Deposit        - Log incoming eddies");
-        System.out.println("  [P] Make Payment       - Record outgoing eddies");
-        System.out.println("  [L] Ledger             - View transaction history");
-        System.out.println("  [X] Exit               - Jack out of the system");
-        printSeparator();
+        frame.line(YELLOW + "\n  What would you like to do, choom?\n" + RESET);
+        frame.line("  [D] Add Deposit        - Log incoming eddies");
+        frame.line("  [P] Make Payment       - Record outgoing eddies");
+        frame.line("  [I] Import File        - Load a batch of transactions");
+        frame.line("  [L] Ledger             - View transaction history");
+        frame.line("  [X] Exit               - Jack out of the system");
+        appendSeparator(frame);
+        frame.print();
     }
 
     // displays the ledger menu
     public static void showLedgerScreen() {
-        clearScreen();
-        printHeader("LEDGER - TRANSACTION HISTORY");
+        RenderBuffer frame = new RenderBuffer(2048);
+        appendClearScreen(frame);
+        appendHeader(frame, "LEDGER - TRANSACTION HISTORY");
 
-        System.out.println(YELLOW + "\n  Select view mode:\n" + RESET);
-        System.out.println("  [A] All Transactions   - Show everything");
-        System.out.println("  [D] Deposits Only      - Show only credits");
-        System.out.println("  [P] Payments Only      - Show only debits");
-        System.out.println("  [R] Reports            - Run analysis reports");
-        System.out.println("  [H] Home               - Return to main menu");
-        printSeparator();
+        frame.line(YELLOW + "\n  Select view mode:\n" + RESET);
+        frame.line("  [A] All Transactions   - Show everything");
+        frame.line("  [D] Deposits Only      - Show only credits");
+        frame.line("  [P] Payments Only      - Show only debits");
+        frame.line("  [R] Reports            - Run analysis reports");
+        frame.line("  [H] Home               - Return to main menu");
+        appendSeparator(frame);
+        frame.print();
     }
 
     // displays the reports menu
     public static void showReportsScreen() {
-        clearScreen();
-        printHeader("REPORTS - DATA ANALYSIS");
+        RenderBuffer frame = new RenderBuffer(2048);
+        appendClearScreen(frame);
+        appendHeader(frame, "REPORTS - DATA ANALYSIS");
 
-        System.out.println(YELLOW + "\n  Available reports:\n" + RESET);
-        System.out.println("  [1] Month To Date      - Current month transactions");
-        System.out.println("  [2] Previous Month     - Last month's activity");
-        System.out.println("  [3] Year To Date       - Current year summary");
-        System.out.println("  [4] Previous Year      - Last year's data");
-        System.out.println("  [5] Search by Vendor   - Find specific vendor transactions");
-        System.out.println("  [6] Custom Search      - Advanced filtering options");
-        System.out.println("  [0] Back               - Return to ledger");
-        printSeparator();
+        frame.line(YELLOW + "\n  Available reports:\n" + RESET);
+        frame.line("  [1] Month To Date      - Current month transactions");
+        frame.line("  [2] Previous Month     - Last month's activity");
+        frame.line("  [3] Year To Date       - Current year summary");
+        frame.line("  [4] Previous Year      - Last year's data");
+        frame.line("  [5] Search by Vendor   - Find specific vendor transactions");
+        frame.line("  [6] Custom Search      - Advanced filtering options");
+        frame.line("  [7] Metrics            - Timings and counters of this session");
+        frame.line("  [8] Analytics          - Top vendors and typical amounts");
+        frame.line("  [0] Back               - Return to ledger");
+        appendSeparator(frame);
+        frame.print();
+    }
+
+    // displays the timings and counters collected so far (see Metrics)
+    public static void showMetrics() {
+        RenderBuffer frame = new RenderBuffer(4096);
+        appendClearScreen(frame);
+        appendHeader(frame, "METRICS - WHERE THE TIME GOES");
+        frame.line();
+        Metrics.appendReport(frame);
+        frame.line();
+        appendHint(frame, "  Percentiles are upper bounds (powers of two), times since the app started.");
+        appendSeparator(frame);
+        frame.print();
+    }
+
+    // displays the top vendors and the amount percentiles (see LedgerAnalytics)
+    public static void showAnalytics(LedgerAnalytics analytics) {
+        RenderBuffer frame = new RenderBuffer(8192);
+        appendClearScreen(frame);
+        appendHeader(frame, "ANALYTICS - WHERE THE EDDIES GO");
+        frame.line();
+        analytics.appendReport(frame);
+        frame.line();
+        appendHint(frame, "  Median and percentiles are within 1%, totals and averages are exact.");
+        appendSeparator(frame);
+        frame.print();
     }
 
     // displays the list of transactions in a formatted table
+    // the whole table is built first and printed at once (see LedgerPager for long lists)
     public static void displayTransactions(List<Transaction> transactions, String title) {
-        clearScreen();
-        printHeader(title);
+        RenderBuffer frame = new RenderBuffer(256 + transactions.size() * 160);
+        appendClearScreen(frame);
+        appendHeader(frame, title);
         if (transactions.isEmpty()) {
-            System.out.println(RED + "\n  >> No transactions found. The database is empty, choom.\n" + RESET);
-            return;
-        }
-        // prints table header
-        System.out.println(CYAN + "\n  " + String.format("%-12s %-10s %-8s %-35s %-25s %12s",
-                "DATE", "TIME", "TYPE", "DESCRIPTION", "VENDOR", "AMOUNT") + RESET);
-        printSeparator();
-        // print each transaction
-        for (Transaction t : transactions) {
-            String type = t.isDeposit() ? GREEN + "[+]" + RESET : RED + "[-]" + RESET;
-            String amountColor = t.isDeposit() ? GREEN : RED;
-
-            System.out.println(String.format("  %-12s %-10s %s   %-35s %-25s " + amountColor + "$%,11.2f" + RESET,
-                    t.getDate().toString(),
-                    t.getTime().toString(),
-                    type,
-                    truncate(t.getDescription(), 35),
-                    truncate(t.getVendor(), 25),
-                    t.getAmount()));
+            appendNoTransactions(frame);
+        } else {
+            appendTableHeader(frame);
+            for (Transaction t : transactions) {
+                appendTransactionRow(frame.text(), t);
+                frame.line();
+            }
+            appendSeparator(frame);
+            appendHint(frame, "  Total transactions: " + transactions.size());
         }
-        printSeparator();
-        System.out.println(YELLOW + "  Total transactions: " + transactions.size() + RESET);
+        frame.print();
     }
 
     /**
      * Displays transaction statistics
+     * reads the amount column of the store directly, no Transaction objects needed
      */
-    public static void displayStatistics(List<Transaction> transactions) {
-        if (transactions.isEmpty()) {
-            return;
+    public static void displayStatistics(TransactionStore store, int[] rows) {
+        // sums in cents so the totals are whole numbers
+        PeriodTotals totals = new PeriodTotals();
+        for (int row : rows) {
+            totals.add(store.getAmountCents(row));
         }
+        displayStatistics(totals);
+    }
 
-        double totalDeposits = 0;
-        double totalPayments = 0;
-        int depositCount = 0;
-        int paymentCount = 0;
-
-        for (Transaction t : transactions) {
-            if (t.isDeposit()) {
-                totalDeposits += t.getAmount();
-                depositCount++;
-            } else {
-                totalPayments += Math.abs(t.getAmount());
-                paymentCount++;
-            }
+    /**
+     * Displays statistics that were already added up (like the monthly rollups)
+     */
+    public static void displayStatistics(PeriodTotals totals) {
+        RenderBuffer frame = new RenderBuffer(1024);
+        appendStatistics(frame, totals);
+        frame.print();
+    }
+
+    // the statistics box, nothing is added when there are no transactions
+    static void appendStatistics(RenderBuffer frame, PeriodTotals totals) {
+        if (totals.getCount() == 0) {
+            return;
         }
 
-        double balance = totalDeposits - totalPayments;
-        String balanceColor = balance >= 0 ? GREEN : RED;
+        long depositCents = totals.getDepositCents();
+        long paymentCents = totals.getPaymentCents();
+        int depositCount = totals.getDepositCount();
+        int paymentCount = totals.getPaymentCount();
+
+        long balanceCents = depositCents - paymentCents;
+        String balanceColor = balanceCents >= 0 ? GREEN : RED;
+
+        frame.line("\n" + CYAN + "  ╔═══════════════════════════════════════════════════════╗" + RESET);
+        frame.line(CYAN + "  ║" + RESET + "                   STATISTICS                          " + CYAN + "║" + RESET);
+        frame.line(CYAN + "  ╚═══════════════════════════════════════════════════════╝" + RESET);
+        frame.append("  " + GREEN + "  Total Deposits:  $");
+        TransactionFormat.appendAmountRightAligned(frame.text(), depositCents, 15);
+        frame.line(RESET);
+        appendCount(frame, "  " + "  Deposit Count:   ", depositCount);
+        frame.line();
+        frame.append("  " + RED + "  Total Payments:  $");
+        TransactionFormat.appendAmountRightAligned(frame.text(), paymentCents, 15);
+        frame.line(RESET);
+        appendCount(frame, "  " + "  Payment Count:   ", paymentCount);
+        frame.line();
+        frame.line("  " + "  ═══════════════════════════════════════════════");
+        frame.append("  " + balanceColor + BOLD + "  Current Balance: $");
+        TransactionFormat.appendAmountRightAligned(frame.text(), balanceCents, 15);
+        frame.line(RESET);
+        frame.line();
+        frame.line(CYAN + "  ═════════════════════════════════════════════════════════" + RESET);
+    }
 
-        System.out.println("\n" + CYAN + "  ╔═══════════════════════════════════════════════════════╗" + RESET);
-        System.out.println(CYAN + "  ║" + RESET + "                   STATISTICS                          " + CYAN + "║" + RESET);
-        System.out.println(CYAN + "  ╚═══════════════════════════════════════════════════════╝" + RESET);
-        System.out.println("  " + GREEN + "  Total Deposits:  " + String.format("$%,15.2f", totalDeposits) + RESET);
-        System.out.println("  " + "  Deposit Count:   " + String.format("%5d transactions", depositCount));
-        System.out.println();
-        System.out.println("  " + RED + "  Total Payments:  " + String.format("$%,15.2f", totalPayments) + RESET);
-        System.out.println("  " + "  Payment Count:   " + String.format("%5d transactions", paymentCount));
-        System.out.println();
-        System.out.println("  " + "  ═══════════════════════════════════════════════");
-        System.out.println("  " + balanceColor + BOLD + "  Current Balance: " + String.format("$%,15.2f", balance) + RESET);
-        System.out.println();
-        System.out.println(CYAN + "  ═════════════════════════════════════════════════════════" + RESET);
+    // label + "%5d transactions"
+    private static void appendCount(RenderBuffer frame, String label, int count) {
+        frame.append(label);
+        String digits = Integer.toString(count);
+        TransactionFormat.appendSpaces(frame.text(), 5 - digits.length());
+        frame.append(digits).line(" transactions");
     }
 
     // shows a success message
     public static void showSuccessMessage(String message) {
-        System.out.println(GREEN + "\n  ✓ " + message + RESET);
+        new RenderBuffer(message.length() + 32).line(GREEN + "\n  ✓ " + message + RESET).print();
     }
 
     // shows an error message
     public static void showErrorMessage(String message) {
-        System.out.println(RED + "\n  ✗ ERROR: " + message + RESET);
+        new RenderBuffer(message.length() + 32).line(RED + "\n  ✗ ERROR: " + message + RESET).print();
     }
 
     // shows a warning message
     public static void showWarningMessage(String message) {
-        System.out.println(YELLOW + "\n  ⚠ " + message + RESET);
+        new RenderBuffer(message.length() + 32).line(YELLOW + "\n  ⚠ " + message + RESET).print();
+    }
+
+    // the pieces below build screens in a RenderBuffer, so a whole screen is printed at once
+
+    // same as clearScreen()
+    static void appendClearScreen(RenderBuffer frame) {
+        // the ANSI codes clear most terminals, the empty lines are the backup
+        // so that at least there is some space if the codes don't work
+        frame.append("\033[H\033[2J").append("\n\n\n");
+    }
+
+    // a cyberpunk style header
+    static void appendHeader(RenderBuffer frame, String title) {
+        frame.append(CYAN).line("\n  ╔════════════════════════════════════════════════════════════════════╗");
+        frame.line("  ║                                                                    ║");
+        frame.append("  ║  ");
+        TransactionFormat.appendPadded(frame.text(), centerText(title, 66), 66);
+        frame.line("║");
+        frame.line("  ║                                                                    ║");
+        frame.append("  ╚════════════════════════════════════════════════════════════════════╝").line(RESET);
+    }
+
+    // a separator line
+    static void appendSeparator(RenderBuffer frame) {
+        frame.append(CYAN).append("  ────────────────────────────────────────────────────────────────────").line(RESET);
+    }
+
+    // the column titles of the transactions table, followed by a separator
+    static void appendTableHeader(RenderBuffer frame) {
+        frame.append(CYAN).append("\n  ").append(TABLE_HEADER).line(RESET);
+        appendSeparator(frame);
     }
 
-    // prints a cyberpunk style header
-    private static void printHeader(String title) {
-        System.out.println(CYAN + "\n  ╔════════════════════════════════════════════════════════════════════╗");
-        System.out.println("  ║                                                                    ║");
-        System.out.println(String.format("  ║  %-66s║", centerText(title, 66)));
-        System.out.println("  ║                                                                    ║");
-        System.out.println("  ╚════════════════════════════════════════════════════════════════════╝" + RESET);
+    static void appendNoTransactions(RenderBuffer frame) {
+        frame.append(RED).append("\n  >> No transactions found. The database is empty, choom.\n").line(RESET);
     }
 
-    // prints a separator line
-    private static void printSeparator() {
-        System.out.println(CYAN + "  ────────────────────────────────────────────────────────────────────" + RESET);
+    static void appendHint(RenderBuffer frame, String text) {
+        frame.append(YELLOW).append(text).line(RESET);
     }
 
     // centers text within a given width
@@ -199,6 +279,26 @@ public class DisplayHelper {
         return centered.toString();
     }
 
+    // one row of the transactions table, same layout as
+    // "  %-12s %-10s %s   %-35s %-25s $%11s" with the type and amount in color
+    static void appendTransactionRow(StringBuilder row, Transaction t) {
+        String color = t.isDeposit() ? GREEN : RED;
+        row.append("  ");
+        int start = row.length();
+        TransactionFormat.appendDate(row, t.getDate());
+        TransactionFormat.appendSpaces(row, 13 - (row.length() - start));
+        start = row.length();
+        TransactionFormat.appendShortTime(row, t.getTime());
+        TransactionFormat.appendSpaces(row, 11 - (row.length() - start));
+        row.append(color).append(t.isDeposit() ? "[+]" : "[-]").append(RESET).append("   ");
+        TransactionFormat.appendPadded(row, truncate(t.getDescription(), 35), 35);
+        row.append(' ');
+        TransactionFormat.appendPadded(row, truncate(t.getVendor(), 25), 25);
+        row.append(' ').append(color).append('$');
+        TransactionFormat.appendAmountRightAligned(row, t.getAmountCents(), 11);
+        row.append(RESET);
+    }
+
     // truncates text if it is too long
     private static String truncate(String text, int maxLength) {
         if (text.length() <= maxLength) {
@@ -209,15 +309,9 @@ public class DisplayHelper {
 
     // clears the screen (works on most terminals)
     public static void clearScreen() {
-        // this works on most terminals
-        System.out.print("\033[H\033[2J");
-        System.out.flush();
-
-        // backup method: print empty lines
-        // if the ANSI codes don't work, at least we get some space
-        for (int i = 0; i < 3; i++) {
-            System.out.println();
-        }
+        RenderBuffer frame = new RenderBuffer(16);
+        appendClearScreen(frame);
+        frame.print();
     }
 
     // pauses execution for a bit (for effect)
@@ -231,11 +325,11 @@ public class DisplayHelper {
 
     // waits for user to press enter
     public static void pressEnterToContinue() {
-        System.out.println(YELLOW + "\n  Press ENTER to continue..." + RESET);
+        new RenderBuffer(64).line(YELLOW + "\n  Press ENTER to continue..." + RESET).print();
         try {
             new java.util.Scanner(System.in).nextLine();
         } catch (Exception e) {
             // just continues if there is an issue
         }
     }
-}
\ No newline at end of file
+}
@@ -1,96 +1,276 @@
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 /**
  * FileManager does all operations for the Night City Manager
  * reads and writes transactions to/from the CSV file
  */
 public class FileManager {
     private static final String FILE_NAME = "transactions.csv";
-    private static final String BACKUP_FOLDER = "backups";
+    private static final int EXPORT_BUFFER_SIZE = 256 * 1024;
+    // first line of every export
+    public static final String EXPORT_HEADER = "Date|Time|Description|Vendor|Amount";
 
-    // this returns them as a list of Transaction objects
-    public static List<Transaction> readTransactions() {
-        List<Transaction> transactions = new ArrayList<>();
+    /**
+     * reads the whole CSV file into a column store (this is what LedgerRepository keeps in memory)
+     */
+    public static TransactionStore loadLedger() {
+        recoverJournal();
+        LedgerLock lock = LedgerLock.readLedger();
+        try {
+            return readLedger();
+        } finally {
+            lock.unlock();
+        }
+    }
 
+    /**
+     * transactions still in the journal (like after a crash, or written by another copy
+     * of the app) go into the file first
+     * returns the sequence number of our last append that is in the file now
+     * (see TransactionJournal.appendedCount()), -1 if the journal couldn't be compacted
+     */
+    static long recoverJournal() {
+        // with the journal locked nothing can be appended between compacting and counting
+        LedgerLock journal = LedgerLock.journal();
+        try {
+            int recovered = TransactionJournal.compact();
+            if (recovered > 0) {
+                System.out.println("Recovered " + recovered + " transactions from the journal.");
+            }
+            return TransactionJournal.appendedCount();
+        } catch (IOException e) {
+            System.out.println("Error replaying journal: " + e.getMessage());
+            return -1;
+        } finally {
+            journal.unlock();
+        }
+    }
+
+    /**
+     * reads the file as it is, call it while holding LedgerLock.readLedger()
+     */
+    static TransactionStore readLedger() {
         // checks if file exists, if not creates it
         File file = new File(FILE_NAME);
         if (!file.exists()) {
             System.out.println("No transaction file found. Creating new one...");
             createNewFile();
-            return transactions; // return empty list for new file
+            return new TransactionStore(); // return empty store for new file
         }
 
-        // reads the file line by line
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME))) {
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                // skips empty lines
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-                try {
-                    // converts the CSV line to a Transaction object
-                    Transaction transaction = Transaction.fromCSVLine(line);
-                    transactions.add(transaction);
-                } catch (Exception e) {
-                    // if a line is corrupted, skips it but keeps going
-                    System.out.println("Warning: Skipped corrupted line: " + line);
-                }
-            }
-            System.out.println("Loaded " + transactions.size() + " transactions from file.");
+        // uses the binary snapshot when it is still good, otherwise reads the file
+        // in parallel chunks, see LedgerSnapshot and LedgerLoader
+        try {
+            return LedgerSnapshot.load(file.toPath());
         } catch (IOException e) {
             System.out.println("Error reading file: " + e.getMessage());
+            return new TransactionStore();
         }
-        return transactions;
     }
     /**
-     * writes a single new transaction to the CSV file
-     * appends it to the end of the file
+     * writes a single new transaction
+     * it goes into the journal (just that one line), the journal gets moved into the CSV file
+     * every few hundred transactions, see TransactionJournal
      */
     public static void writeTransaction(Transaction transaction) {
-        // Create backup before modifying file
-        createBackup();
-
-        try (BufferedWriter writer = new BufferedWriter(
-                new FileWriter(FILE_NAME, true))) { // true = append mode
-
-            // Check if file needs a newline before appending
-            File file = new File(FILE_NAME);
-            if (file.length() > 0) {
-                // File has content - add newline first, then our data
-                writer.newLine();
-            }
-
-            writer.write(transaction.toCSVFormat());
-
+        Metrics.Timer timer = Metrics.start("append");
+        long sequence;
+        try {
+            sequence = TransactionJournal.append(transaction);
             System.out.println("Transaction saved successfully!");
+        } catch (IOException e) {
+            System.out.println("Error writing to file: " + e.getMessage());
+            LedgerRepository.invalidate();
+            return;
+        }
+        // keeps the in-memory ledger up to date without reading the file again
+        LedgerRepository.recordAppend(transaction, sequence);
+        timer.stop();
+        Metrics.count("append.rows");
 
+        if (TransactionJournal.needsCompaction()) {
+            compactJournal();
+        }
+    }
+    /**
+     * writes many new transactions at once (like an import) as a single commit
+     * they go into the journal as one all-or-nothing batch and are moved into the CSV file
+     * right away, so the whole batch costs a couple of fsyncs instead of one per line
+     * returns false if nothing could be written
+     */
+    public static boolean writeTransactions(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return true;
+        }
+        Metrics.Timer timer = Metrics.start("append.batch");
+        // whatever is in the journal goes first, so the batch gets a journal of its own
+        compactJournal();
+        long lastSequence;
+        try {
+            lastSequence = TransactionJournal.appendBatch(transactions);
         } catch (IOException e) {
             System.out.println("Error writing to file: " + e.getMessage());
+            LedgerRepository.invalidate();
+            return false;
         }
+        LedgerRepository.recordAppends(transactions, lastSequence - transactions.size() + 1);
+        compactJournal();
+        timer.stop();
+        Metrics.count("append.rows", transactions.size());
+        return true;
+    }
+    /**
+     * moves the journal into the CSV file, called every few hundred writes and on exit
+     */
+    public static void compactJournal() {
+        // the file stamps are taken under the same locks as the compaction, so the
+        // in-memory ledger can tell if anyone else touched the file in between
+        File ledgerFile = new File(FILE_NAME);
+        long sizeBefore;
+        long modifiedBefore;
+        long sizeAfter;
+        long modifiedAfter;
+        boolean own;
+        int moved;
+        Metrics.Timer timer = Metrics.start("compact");
+        LedgerLock journal = LedgerLock.journal();
+        try {
+            LedgerLock ledger = LedgerLock.writeLedger();
+            try {
+                sizeBefore = ledgerFile.length();
+                modifiedBefore = ledgerFile.lastModified();
+                own = TransactionJournal.hasOwnJournal();
+                moved = TransactionJournal.compact();
+                sizeAfter = ledgerFile.length();
+                modifiedAfter = ledgerFile.lastModified();
+            } finally {
+                ledger.unlock();
+            }
+        } catch (IOException e) {
+            // not lost, the journal is still there and gets compacted next time
+            System.out.println("Error compacting journal: " + e.getMessage());
+            return;
+        } finally {
+            journal.unlock();
+        }
+        if (moved == 0) {
+            return; // nothing happened, not worth a measurement
+        }
+        timer.stop();
+        if (own) {
+            // only our own journal holds rows that are in memory already
+            LedgerRepository.recordCompaction(sizeBefore, modifiedBefore, sizeAfter, modifiedAfter);
+        } else {
+            LedgerRepository.invalidate();
+        }
+        // the file grew, the backup only has to store the new part (see BackupManager)
+        BackupManager.backupInBackground();
+    }
+    /**
+     * called when the app exits: moves the journal into the file and makes a last backup
+     */
+    public static void close() {
+        compactJournal();
+        BackupManager.shutdown();
+        BackupManager.backupNow();
     }
     /**
      * writes all transactions back to the CSV file
      * this is used when we need to update the entire file (like after sorting or deleting)
+     *
+     * the new file is written next to the old one, forced to disk and then renamed over it,
+     * so a crash half way leaves the old file untouched instead of a half empty ledger
+     * if the file changed since it was loaded (another copy of the app), nothing is written
      */
     public static void writeAllTransactions(List<Transaction> transactions) {
-        // Create backup before overwriting file
-        createBackup();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME))) {
-            for (Transaction transaction : transactions) {
-                writer.write(transaction.toCSVFormat());
-                writer.newLine();
+        // anything still in the journal goes into the file first, so the backup has it
+        compactJournal();
+        // backs up the current file before overwriting it (usually just the last few appends)
+        BackupManager.backupNow();
+        // the list was made from this version of the file, see the check below
+        long[] knownStamp = LedgerRepository.knownFileStamp();
+
+        File ledgerFile = new File(FILE_NAME);
+        Path ledgerPath = ledgerFile.toPath();
+        Path tempPath = new File(FILE_NAME + "." + ProcessHandle.current().pid() + ".tmp").toPath();
+        long size;
+        long modified;
+        LedgerLock journal = LedgerLock.journal();
+        try {
+            LedgerLock ledger = LedgerLock.writeLedger();
+            try {
+                // if transactions were added or changed since we read the file (a new journal,
+                // or another copy of the app), writing our list would throw them away
+                if (TransactionJournal.exists() || knownStamp == null || ledgerFile.length() != knownStamp[0]
+                        || ledgerFile.lastModified() != knownStamp[1]) {
+                    System.out.println("Error: the ledger was changed by another copy of the app, "
+                            + "nothing was saved. Please try again.");
+                    LedgerRepository.invalidate();
+                    return;
+                }
+                try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    LedgerFileWriter writer = new LedgerFileWriter(channel);
+                    for (Transaction transaction : transactions) {
+                        writer.write(transaction);
+                    }
+                    writer.flush();
+                    channel.force(true);
+                }
+                LedgerSnapshot.delete(); // it describes the old file
+                replaceFile(tempPath, ledgerPath);
+                size = ledgerFile.length();
+                modified = ledgerFile.lastModified();
+            } finally {
+                ledger.unlock();
             }
             System.out.println("All transactions saved successfully!");
         } catch (IOException e) {
             System.out.println("Error writing to file: " + e.getMessage());
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ignored) {
+                // the next rewrite truncates it anyway
+            }
+            LedgerRepository.invalidate();
+            return;
+        } finally {
+            journal.unlock();
+        }
+        LedgerRepository.recordRewrite(transactions, size, modified);
+        // the file doesn't just grow anymore, so this starts a new chain with a full backup
+        BackupManager.fullBackupInBackground();
+    }
+    /**
+     * renames the finished temp file over the target in one step (the ledger, or the journal of a batch)
+     */
+    static void replaceFile(Path tempPath, Path targetPath) throws IOException {
+        try {
+            Files.move(tempPath, targetPath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // makes the rename itself durable (not every OS lets us open a folder, that's fine)
+        Path folder = targetPath.toAbsolutePath().getParent();
+        try (FileChannel directory = FileChannel.open(folder, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+            // the data is already on disk, only the rename might not be yet
         }
     }
+    /**
+     * returns the ledger file, used by LedgerRepository to check if it changed
+     */
+    public static File getLedgerFile() {
+        return new File(FILE_NAME);
+    }
     /**
      * creates a new empty CSV file
      */
@@ -104,52 +284,54 @@ public class FileManager {
         }
     }
     /**
-     * creates a backup of the current transactions file
-     * backup filename includes timestamp
+     * exports filtered transactions to a new CSV file
+     * it is useful for reports
      */
-    private static void createBackup() {
-        File sourceFile = new File(FILE_NAME);
-        // Only backups if file exists and has content
-        if (!sourceFile.exists() || sourceFile.length() == 0) {
-            return;
-        }
-        // creates backups folder if it doesn't exist
-        File backupDir = new File(BACKUP_FOLDER);
-        if (!backupDir.exists()) {
-            backupDir.mkdir();
-        }
-        // creates backup filename with timestamp
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
-        String timestamp = LocalDateTime.now().format(formatter);
-        String backupFileName = BACKUP_FOLDER + "/transactions_backup_" + timestamp + ".csv";
-        try {
-            // Copy the file
-            Files.copy(sourceFile.toPath(),
-                    Paths.get(backupFileName),
-                    StandardCopyOption.REPLACE_EXISTING);
-
-            // TODO: Maybe add option to auto delete old backups after 30 days
-        } catch (IOException e) {
-            // ff backup fails, it is not critical, just log it
-            System.out.println("Note: Could not create backup: " + e.getMessage());
+    public static long exportTransactions(List<Transaction> transactions, String fileName) {
+        return exportTransactions(transactions.iterator(), fileName);
+    }
+    /**
+     * exports transactions as they come out of the stream (like TransactionStore.stream(rows)),
+     * only one transaction is in memory at a time
+     */
+    public static long exportTransactions(Stream<Transaction> transactions, String fileName) {
+        try (Stream<Transaction> stream = transactions) {
+            return exportTransactions(stream.iterator(), fileName);
         }
     }
     /**
-     * exports filtered transactions to a new CSV file
-     * it is useful for reports
+     * writes the transactions to fileName with a header line, gzipped if the name ends with .gz
+     * returns how many transactions were written, or -1 if the export failed
      */
-    public static void exportTransactions(List<Transaction> transactions, String fileName) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
-            // writes header line
-            writer.write("Date|Time|Description|Vendor|Amount");
-            writer.newLine();
-            for (Transaction transaction : transactions) {
-                writer.write(transaction.toCSVFormat());
-                writer.newLine();
-            }
-            System.out.println("Exported " + transactions.size() + " transactions to " + fileName);
+    public static long exportTransactions(Iterator<Transaction> transactions, String fileName) {
+        long start = System.nanoTime();
+        long rowCount;
+        try (OutputStream file = new FileOutputStream(fileName);
+             OutputStream out = fileName.toLowerCase().endsWith(".gz")
+                     ? new GZIPOutputStream(file, EXPORT_BUFFER_SIZE) : file) {
+            rowCount = exportTransactions(transactions, out);
         } catch (IOException e) {
             System.out.println("Error exporting file: " + e.getMessage());
+            return -1;
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println("Exported " + rowCount + " transactions to " + fileName
+                + " in " + millis + " ms (" + (rowCount * 1000 / millis) + " rows/s).");
+        return rowCount;
+    }
+    /**
+     * writes the header line and the transactions to a stream that is already open
+     * (like System.out for the command line), the stream is flushed but not closed
+     */
+    public static long exportTransactions(Iterator<Transaction> transactions, OutputStream out) throws IOException {
+        LedgerFileWriter writer = new LedgerFileWriter(Channels.newChannel(out), EXPORT_BUFFER_SIZE);
+        // writes header line
+        writer.writeLine(EXPORT_HEADER);
+        while (transactions.hasNext()) {
+            writer.write(transactions.next());
         }
+        writer.flush();
+        out.flush();
+        return writer.getRowCount();
     }
-}
\ No newline at end of file
+}
@@ -1,3 +1,9 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.Scanner;
@@ -33,7 +39,7 @@ public class HomeScreen {
      */
     private void handleHomeChoice(String choice) {
         // validates the input first
-        if (!InputValidator.isValidMenuChoice(choice, "D", "P", "L", "X")) {
+        if (!InputValidator.isValidMenuChoice(choice, "D", "P", "I", "L", "X")) {
             DisplayHelper.pressEnterToContinue();
             return;
         }
@@ -47,6 +53,9 @@ public class HomeScreen {
             case "P":
                 makePayment();
                 break;
+            case "I":
+                importFile();
+                break;
             case "L":
                 // goes to ledger screen (we will implement this in next module)
                 LedgerScreen ledgerScreen = new LedgerScreen(scanner);
@@ -65,10 +74,12 @@ public class HomeScreen {
      * handles adding a deposit (money coming in)
      */
     private void addDeposit() {
-        DisplayHelper.clearScreen();
-        System.out.println("\n╔════════════════════════════════════════════════════════════╗");
-        System.out.println("║            ADD DEPOSIT - LOG INCOMING EDDIES               ║");
-        System.out.println("╚════════════════════════════════════════════════════════════╝\n");
+        RenderBuffer frame = new RenderBuffer(1024);
+        DisplayHelper.appendClearScreen(frame);
+        frame.line("\n╔════════════════════════════════════════════════════════════╗");
+        frame.line("║            ADD DEPOSIT - LOG INCOMING EDDIES               ║");
+        frame.line("╚════════════════════════════════════════════════════════════╝\n");
+        frame.print();
 
         // gets date
         String dateInput;
@@ -112,22 +123,23 @@ public class HomeScreen {
 
         // gets amount
         String amountInput;
-        double amount;
+        long amountCents;
         do {
             System.out.print("  Enter amount ($): ");
             amountInput = scanner.nextLine().trim();
         } while (!InputValidator.isValidDepositAmount(amountInput));
-        amount = Double.parseDouble(amountInput);
-
-        // shows summary and confirmation
-        System.out.println("\n  ─────────────────────────────────────────────────────────");
-        System.out.println("  DEPOSIT SUMMARY:");
-        System.out.println("  Date:        " + dateInput);
-        System.out.println("  Time:        " + timeInput);
-        System.out.println("  Description: " + description);
-        System.out.println("  Vendor:      " + vendor);
-        System.out.println("  Amount:      $" + String.format("%.2f", amount));
-        System.out.println("  ─────────────────────────────────────────────────────────");
+        amountCents = Money.parse(amountInput);  // stored in cents
+
+        // shows summary and confirmation (the banner frame is empty again after print())
+        frame.line("\n  ─────────────────────────────────────────────────────────");
+        frame.line("  DEPOSIT SUMMARY:");
+        frame.line("  Date:        " + dateInput);
+        frame.line("  Time:        " + timeInput);
+        frame.line("  Description: " + description);
+        frame.line("  Vendor:      " + vendor);
+        frame.line("  Amount:      $" + Money.format(amountCents));
+        frame.line("  ─────────────────────────────────────────────────────────");
+        frame.print();
 
         System.out.print("\n  Save this deposit? (Y/N): ");
         String confirm = scanner.nextLine();
@@ -139,7 +151,7 @@ public class HomeScreen {
                     LocalTime.parse(timeInput),
                     description,
                     vendor,
-                    amount  // deposit is positive
+                    amountCents  // deposit is positive
             );
             // saves to the file
             FileManager.writeTransaction(transaction);
@@ -154,10 +166,12 @@ public class HomeScreen {
      * handles making a payment (money going out)
      */
     private void makePayment() {
-        DisplayHelper.clearScreen();
-        System.out.println("\n╔════════════════════════════════════════════════════════════╗");
-        System.out.println("║           MAKE PAYMENT - LOG OUTGOING EDDIES               ║");
-        System.out.println("╚════════════════════════════════════════════════════════════╝\n");
+        RenderBuffer frame = new RenderBuffer(1024);
+        DisplayHelper.appendClearScreen(frame);
+        frame.line("\n╔════════════════════════════════════════════════════════════╗");
+        frame.line("║           MAKE PAYMENT - LOG OUTGOING EDDIES               ║");
+        frame.line("╚════════════════════════════════════════════════════════════╝\n");
+        frame.print();
 
         // gets date
         String dateInput;
@@ -201,22 +215,23 @@ public class HomeScreen {
 
         // gets amount
         String amountInput;
-        double amount;
+        long amountCents;
         do {
             System.out.print("  Enter amount ($): ");
             amountInput = scanner.nextLine().trim();
         } while (!InputValidator.isValidPaymentAmount(amountInput));
-        amount = Double.parseDouble(amountInput);
-
-        // shows summary and confirmation
-        System.out.println("\n  ─────────────────────────────────────────────────────────");
-        System.out.println("  PAYMENT SUMMARY:");
-        System.out.println("  Date:        " + dateInput);
-        System.out.println("  Time:        " + timeInput);
-        System.out.println("  Description: " + description);
-        System.out.println("  Vendor:      " + vendor);
-        System.out.println("  Amount:      $" + String.format("%.2f", amount));
-        System.out.println("  ─────────────────────────────────────────────────────────");
+        amountCents = Money.parse(amountInput);  // stored in cents
+
+        // shows summary and confirmation (the banner frame is empty again after print())
+        frame.line("\n  ─────────────────────────────────────────────────────────");
+        frame.line("  PAYMENT SUMMARY:");
+        frame.line("  Date:        " + dateInput);
+        frame.line("  Time:        " + timeInput);
+        frame.line("  Description: " + description);
+        frame.line("  Vendor:      " + vendor);
+        frame.line("  Amount:      $" + Money.format(amountCents));
+        frame.line("  ─────────────────────────────────────────────────────────");
+        frame.print();
 
         System.out.print("\n  Confirm this payment? (Y/N): ");
         String confirm = scanner.nextLine();
@@ -229,7 +244,7 @@ public class HomeScreen {
                     LocalTime.parse(timeInput),
                     description,
                     vendor,
-                    -amount  // payment is negative (notice the minus sign)
+                    -amountCents  // payment is negative (notice the minus sign)
             );
             // saves to file
             FileManager.writeTransaction(transaction);
@@ -240,21 +255,92 @@ public class HomeScreen {
         DisplayHelper.pressEnterToContinue();
     }
 
+    /**
+     * imports a whole file of transactions (like a bank feed), see BulkImporter
+     * every line is checked with the same rules as the deposit and payment screens,
+     * the file is checked first and only saved after the user confirms
+     */
+    private void importFile() {
+        RenderBuffer frame = new RenderBuffer(1024);
+        DisplayHelper.appendClearScreen(frame);
+        frame.line("\n╔════════════════════════════════════════════════════════════╗");
+        frame.line("║           IMPORT FILE - LOAD A BATCH OF EDDIES             ║");
+        frame.line("╚════════════════════════════════════════════════════════════╝\n");
+        frame.line("  Columns: date, time, description, vendor, amount");
+        frame.line("  Separated by | or , (a header line is fine, negative amounts are payments)\n");
+        frame.print();
+
+        System.out.print("  Enter file name: ");
+        String fileName = scanner.nextLine().trim();
+        if (fileName.isEmpty()) {
+            DisplayHelper.showWarningMessage("Import cancelled. No changes made.");
+            DisplayHelper.pressEnterToContinue();
+            return;
+        }
+        Path path = Paths.get(fileName);
+
+        // first pass only checks the file, nothing is written yet
+        BulkImporter.Result check = checkImport(path);
+        if (check == null) {
+            DisplayHelper.pressEnterToContinue();
+            return;
+        }
+        frame.line("\n  Good lines: " + check.getImported() + "   Bad lines: " + check.getSkipped());
+        int shown = Math.min(10, check.getErrors().size());
+        for (int i = 0; i < shown; i++) {
+            frame.line("  " + check.getErrors().get(i));
+        }
+        if (check.getErrors().size() > shown) {
+            frame.line("  ... and " + (check.getErrors().size() - shown) + " more");
+        }
+        frame.print();
+
+        if (check.getImported() == 0) {
+            DisplayHelper.showWarningMessage("Nothing to import. No changes made.");
+            DisplayHelper.pressEnterToContinue();
+            return;
+        }
+        System.out.print("\n  Import the " + check.getImported() + " good transactions? (Y/N): ");
+        if (InputValidator.isYes(scanner.nextLine())) {
+            // the rows were already read and checked above, they are written as they are
+            BulkImporter.Result result = BulkImporter.write(check);
+            if (result.isWritten()) {
+                DisplayHelper.showSuccessMessage("Imported " + result.getImported() + " transactions in "
+                        + result.getMillis() + " ms.");
+            }
+        } else {
+            DisplayHelper.showWarningMessage("Import cancelled. No changes made.");
+        }
+        DisplayHelper.pressEnterToContinue();
+    }
+
+    // reads and checks the file through BulkImporter, null if the file couldn't be read
+    private BulkImporter.Result checkImport(Path path) {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return BulkImporter.importLines(reader, false);
+        } catch (IOException e) {
+            DisplayHelper.showErrorMessage("Could not read " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * exits the application
      */
     private void exitApplication() {
-        System.out.println("\n  ╔══════════════════════════════════════════════════════╗");
-        System.out.println("  ║                                                      ║");
-        System.out.println("  ║     Disconnecting from Night City Manager...         ║");
-        System.out.println("  ║                                                      ║");
-        System.out.println("  ║        Thanks for using the system, choom!           ║");
-        System.out.println("  ║                                                      ║");
-        System.out.println("  ║              Stay safe in Night City!                ║");
-        System.out.println("  ║                                                      ║");
-        System.out.println("  ╚══════════════════════════════════════════════════════╝\n");
-
-        // TODO: Maybe add option to create final backup before exiting?
+        RenderBuffer frame = new RenderBuffer(1024);
+        frame.line("\n  ╔══════════════════════════════════════════════════════╗");
+        frame.line("  ║                                                      ║");
+        frame.line("  ║     Disconnecting from Night City Manager...         ║");
+        frame.line("  ║                                                      ║");
+        frame.line("  ║        Thanks for using the system, choom!           ║");
+        frame.line("  ║                                                      ║");
+        frame.line("  ║              Stay safe in Night City!                ║");
+        frame.line("  ║                                                      ║");
+        frame.line("  ╚══════════════════════════════════════════════════════╝\n");
+        frame.print();
+
+        // the final backup is made in Main, once the menu loop is done (FileManager.close)
 
         running = false;
     }
@@ -8,137 +8,210 @@ import java.time.format.DateTimeParseException;
  * prevents bad data from getting into our system
  */
 public class InputValidator {
+    // biggest amount we accept in one transaction (1 billion eddies, in cents)
+    private static final long MAX_AMOUNT_CENTS = 1_000_000_000L * 100;
+
+    private static final String DEPOSIT_TOO_LARGE = "That's a LOT of eddies! Double-check the amount.";
+    private static final String PAYMENT_TOO_LARGE = "That's a huge payment! Double-check before proceeding.";
+
     /**
      * validates a date string
      * format should be: yyyy-MM-dd (like 2023-04-15)
      * date should not be in the future
      */
     public static boolean isValidDate(String dateInput) {
+        return showIfInvalid(dateError(dateInput));
+    }
+
+    /**
+     * validates a time string
+     * format should be: HH:mm:ss (like 14:30:00)
+     */
+    public static boolean isValidTime(String timeInput) {
+        return showIfInvalid(timeError(timeInput));
+    }
+
+    /**
+     * validates an amount for deposits
+     * must be a valid number and positive
+     */
+    public static boolean isValidDepositAmount(String amountInput) {
+        return showIfInvalid(depositAmountError(amountInput));
+    }
+
+    /**
+     * validates an amount for payments
+     * must be a valid number and positive (we will make it negative in the code)
+     */
+    public static boolean isValidPaymentAmount(String amountInput) {
+        return showIfInvalid(paymentAmountError(amountInput));
+    }
+
+    /**
+     * validates a description field
+     * cannot be empty or just whitespace
+     */
+    public static boolean isValidDescription(String description) {
+        return showIfInvalid(descriptionError(description));
+    }
+
+    /**
+     * validates a vendor name
+     * cannot be empty or just whitespace
+     */
+    public static boolean isValidVendor(String vendor) {
+        return showIfInvalid(vendorError(vendor));
+    }
+
+    // the checks below don't print anything, they return what is wrong (or null if it's fine)
+    // so they can also be used where there is no screen, like the bulk import (see BulkImporter)
+
+    /**
+     * same rules as isValidDate, returns the error message or null
+     */
+    public static String dateError(String dateInput) {
         if (dateInput == null || dateInput.trim().isEmpty()) {
-            DisplayHelper.showErrorMessage("Date cannot be empty!");
-            return false;
+            return "Date cannot be empty!";
         }
         try {
             LocalDate date = LocalDate.parse(dateInput.trim());
             // checks if date is in the future
             if (date.isAfter(LocalDate.now())) {
-                DisplayHelper.showErrorMessage("Date cannot be in the future! (Unless you have a time machine...)");
-                return false;
+                return "Date cannot be in the future! (Unless you have a time machine...)";
             }
-            return true;
+            return null;
         } catch (DateTimeParseException e) {
-            DisplayHelper.showErrorMessage("Invalid date format! Use yyyy-MM-dd (example: 2023-04-15)");
-            return false;
+            return "Invalid date format! Use yyyy-MM-dd (example: 2023-04-15)";
         }
     }
 
     /**
-     * validates a time string
-     * format should be: HH:mm:ss (like 14:30:00)
+     * same rules as isValidTime, returns the error message or null
      */
-    public static boolean isValidTime(String timeInput) {
+    public static String timeError(String timeInput) {
         if (timeInput == null || timeInput.trim().isEmpty()) {
-            DisplayHelper.showErrorMessage("Time cannot be empty!");
-            return false;
+            return "Time cannot be empty!";
         }
         try {
             LocalTime.parse(timeInput.trim());
-            return true;
+            return null;
         } catch (DateTimeParseException e) {
-            DisplayHelper.showErrorMessage("Invalid time format! Use HH:mm:ss (example: 14:30:00)");
-            return false;
+            return "Invalid time format! Use HH:mm:ss (example: 14:30:00)";
         }
     }
 
     /**
-     * validates an amount for deposits
-     * must be a valid number and positive
+     * same rules as isValidDepositAmount, returns the error message or null
      */
-    public static boolean isValidDepositAmount(String amountInput) {
+    public static String depositAmountError(String amountInput) {
         if (amountInput == null || amountInput.trim().isEmpty()) {
-            DisplayHelper.showErrorMessage("Amount cannot be empty!");
-            return false;
+            return "Amount cannot be empty!";
         }
         try {
-            double amount = Double.parseDouble(amountInput.trim());
-            // deposits must be positive
-            if (amount <= 0) {
-                DisplayHelper.showErrorMessage("Deposit amount must be positive! (You can't deposit negative eddies!)");
-                return false;
+            long amountCents = Money.parse(amountInput.trim());
+            // deposits must be positive (at least one cent)
+            if (amountCents <= 0) {
+                return "Deposit amount must be positive! (You can't deposit negative eddies!)";
             }
             // checks if amount is reasonable (not too large)
             // TODO: Maybe make this configurable based on user preference
-            if (amount > 1000000000) {
-                DisplayHelper.showWarningMessage("That's a LOT of eddies! Double-check the amount.");
-                return false;
+            if (amountCents > MAX_AMOUNT_CENTS) {
+                return DEPOSIT_TOO_LARGE;
             }
-            return true;
+            return null;
         } catch (NumberFormatException e) {
-            DisplayHelper.showErrorMessage("Invalid amount! Please enter a valid number (example: 150.50)");
-            return false;
+            return "Invalid amount! Please enter a valid number (example: 150.50)";
         }
     }
 
     /**
-     * validates an amount for payments
-     * must be a valid number and positive (we will make it negative in the code)
+     * same rules as isValidPaymentAmount, returns the error message or null
      */
-    public static boolean isValidPaymentAmount(String amountInput) {
+    public static String paymentAmountError(String amountInput) {
         if (amountInput == null || amountInput.trim().isEmpty()) {
-            DisplayHelper.showErrorMessage("Amount cannot be empty!");
-            return false;
+            return "Amount cannot be empty!";
         }
         try {
-            double amount = Double.parseDouble(amountInput.trim());
+            long amountCents = Money.parse(amountInput.trim());
             // payment amount should be entered as positive (we will negate it later)
-            if (amount <= 0) {
-                DisplayHelper.showErrorMessage("Payment amount must be positive! (Just enter the number, we'll handle the negative)");
-                return false;
+            if (amountCents <= 0) {
+                return "Payment amount must be positive! (Just enter the number, we'll handle the negative)";
             }
             // checks if amount is reasonable
-            if (amount > 1000000000) {
-                DisplayHelper.showWarningMessage("That's a huge payment! Double-check before proceeding.");
-                return false;
+            if (amountCents > MAX_AMOUNT_CENTS) {
+                return PAYMENT_TOO_LARGE;
             }
-            return true;
+            return null;
         } catch (NumberFormatException e) {
-            DisplayHelper.showErrorMessage("Invalid amount! Please enter a valid number (example: 89.50)");
-            return false;
+            return "Invalid amount! Please enter a valid number (example: 89.50)";
         }
     }
 
     /**
-     * validates a description field
-     * cannot be empty or just whitespace
+     * an amount with its sign, like in the CSV file: positive is a deposit, negative a payment
+     * each side has the same rules as the deposit and payment amounts, returns the error message or null
      */
-    public static boolean isValidDescription(String description) {
+    public static String signedAmountError(String amountInput) {
+        if (amountInput == null || amountInput.trim().isEmpty()) {
+            return "Amount cannot be empty!";
+        }
+        try {
+            long amountCents = Money.parse(amountInput.trim());
+            if (amountCents == 0) {
+                return "Amount cannot be zero!";
+            }
+            if (amountCents > MAX_AMOUNT_CENTS) {
+                return DEPOSIT_TOO_LARGE;
+            }
+            if (amountCents < -MAX_AMOUNT_CENTS) {
+                return PAYMENT_TOO_LARGE;
+            }
+            return null;
+        } catch (NumberFormatException e) {
+            return "Invalid amount! Please enter a valid number (example: -89.50)";
+        }
+    }
+
+    /**
+     * same rules as isValidDescription, returns the error message or null
+     */
+    public static String descriptionError(String description) {
         if (description == null || description.trim().isEmpty()) {
-            DisplayHelper.showErrorMessage("Description cannot be empty! Tell us what this transaction is for.");
-            return false;
+            return "Description cannot be empty! Tell us what this transaction is for.";
         }
         // checks minimum length
         if (description.trim().length() < 3) {
-            DisplayHelper.showErrorMessage("Description too short! Please be more specific (at least 3 characters).");
-            return false;
+            return "Description too short! Please be more specific (at least 3 characters).";
         }
-        return true;
+        return null;
     }
 
     /**
-     * validates a vendor name
-     * cannot be empty or just whitespace
+     * same rules as isValidVendor, returns the error message or null
      */
-    public static boolean isValidVendor(String vendor) {
+    public static String vendorError(String vendor) {
         if (vendor == null || vendor.trim().isEmpty()) {
-            DisplayHelper.showErrorMessage("Vendor name cannot be empty! Who are you dealing with?");
-            return false;
+            return "Vendor name cannot be empty! Who are you dealing with?";
         }
         // checks minimum length
         if (vendor.trim().length() < 2) {
-            DisplayHelper.showErrorMessage("Vendor name too short! Please enter a valid vendor name.");
-            return false;
+            return "Vendor name too short! Please enter a valid vendor name.";
         }
-        return true;
+        return null;
+    }
+
+    // shows the message on screen if there is one, true if there wasn't
+    private static boolean showIfInvalid(String error) {
+        if (error == null) {
+            return true;
+        }
+        // amounts that are too large were always only a warning
+        if (error.equals(DEPOSIT_TOO_LARGE) || error.equals(PAYMENT_TOO_LARGE)) {
+            DisplayHelper.showWarningMessage(error);
+        } else {
+            DisplayHelper.showErrorMessage(error);
+        }
+        return false;
     }
 
     /**
@@ -214,7 +287,7 @@ public class InputValidator {
             return true;
         }
         try {
-            Double.parseDouble(amountInput.trim());
+            Money.parse(amountInput.trim());
             return true;
         } catch (NumberFormatException e) {
             DisplayHelper.showErrorMessage("Invalid amount format! Please enter a valid number or leave empty.");
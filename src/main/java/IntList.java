@@ -0,0 +1,46 @@
+import java.util.Arrays;
+
+/**
+ * IntList is a growable list of ints without boxing every value into an Integer
+ * (used for lists of row numbers and dictionary ids)
+ */
+public class IntList {
+    private int[] values;
+    private int size = 0;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // the last value added, or -1 if the list is empty
+    public int last() {
+        return size == 0 ? -1 : values[size - 1];
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
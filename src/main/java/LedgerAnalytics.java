@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * LedgerAnalytics answers "where do the eddies go": the vendors we pay the most, the vendors
+ * we deal with the most, and what a typical deposit or payment looks like (average, median,
+ * p90, p99)
+ *
+ *   DateIndex index = LedgerRepository.getDateIndex();
+ *   LedgerAnalytics analytics = LedgerAnalytics.of(index.getStore(), index.all(), 10);
+ *
+ * it is one pass over the rows: per vendor a running total and count (two arrays indexed by
+ * the vendor id, so memory grows with the number of vendors, not with the ledger), and every
+ * amount goes into a QuantileSketch per type instead of being kept for sorting
+ * the top vendors are picked at the end with a min-heap of N entries, so there's no sort of
+ * all vendors either
+ *
+ * the percentiles are within 1% (see QuantileSketch), the totals, counts and averages are exact
+ */
+public class LedgerAnalytics {
+    public static final int DEFAULT_TOP = 10;
+
+    /**
+     * one vendor in a top list
+     */
+    public static class VendorTotal {
+        private final String vendor;
+        private final long paymentCents; // positive, what we paid them
+        private final int count;         // all transactions with them, deposits too
+
+        VendorTotal(String vendor, long paymentCents, int count) {
+            this.vendor = vendor;
+            this.paymentCents = paymentCents;
+            this.count = count;
+        }
+
+        public String getVendor() {
+            return vendor;
+        }
+
+        public long getPaymentCents() {
+            return paymentCents;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final List<VendorTotal> topBySpend;
+    private final List<VendorTotal> topByCount;
+    private final QuantileSketch deposits;
+    private final QuantileSketch payments;
+    private final long depositCents;
+    private final long paymentCents;
+
+    private LedgerAnalytics(List<VendorTotal> topBySpend, List<VendorTotal> topByCount,
+                            QuantileSketch deposits, QuantileSketch payments,
+                            long depositCents, long paymentCents) {
+        this.topBySpend = topBySpend;
+        this.topByCount = topByCount;
+        this.deposits = deposits;
+        this.payments = payments;
+        this.depositCents = depositCents;
+        this.paymentCents = paymentCents;
+    }
+
+    /**
+     * works out the analytics for the rows in the range (use index.all() for the whole ledger),
+     * with the given number of vendors in each top list
+     */
+    public static LedgerAnalytics of(TransactionStore store, DateIndex.Range range, int top) {
+        if (top < 1) {
+            throw new IllegalArgumentException("the top list needs at least 1 vendor, got " + top);
+        }
+        Metrics.Timer timer = Metrics.start("report.analytics");
+        int vendorCount = store.getVendors().size();
+        long[] spendByVendor = new long[vendorCount];
+        int[] countByVendor = new int[vendorCount];
+        QuantileSketch deposits = new QuantileSketch();
+        QuantileSketch payments = new QuantileSketch();
+        long depositCents = 0;
+        long paymentCents = 0;
+
+        for (int position = 0; position < range.size(); position++) {
+            int row = range.get(position);
+            long cents = store.getAmountCents(row);
+            int vendor = store.getVendorId(row);
+            countByVendor[vendor]++;
+            if (cents > 0) {
+                deposits.add(cents);
+                depositCents += cents;
+            } else if (cents < 0) {
+                payments.add(-cents);
+                paymentCents -= cents;
+                spendByVendor[vendor] -= cents;
+            }
+        }
+
+        StringDictionary vendors = store.getVendors();
+        List<VendorTotal> topBySpend = top(vendors, spendByVendor, countByVendor, top,
+                Comparator.comparingLong((Integer vendor) -> spendByVendor[vendor]));
+        List<VendorTotal> topByCount = top(vendors, spendByVendor, countByVendor, top,
+                Comparator.comparingInt((Integer vendor) -> countByVendor[vendor]));
+        timer.stop();
+        return new LedgerAnalytics(topBySpend, topByCount, deposits, payments, depositCents, paymentCents);
+    }
+
+    // the N biggest vendors by the given order, biggest first (ties go alphabetically)
+    // the heap keeps the N best seen so far with the smallest on top, so each vendor is one
+    // peek and at most one swap
+    private static List<VendorTotal> top(StringDictionary vendors, long[] spendByVendor, int[] countByVendor,
+                                         int top, Comparator<Integer> bySize) {
+        Comparator<Integer> order = bySize.thenComparing(vendors::get, Comparator.reverseOrder());
+        PriorityQueue<Integer> heap = new PriorityQueue<>(top, order);
+        for (int vendor = 0; vendor < countByVendor.length; vendor++) {
+            if (countByVendor[vendor] == 0) {
+                continue; // not in this range
+            }
+            if (heap.size() < top) {
+                heap.add(vendor);
+            } else if (order.compare(vendor, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(vendor);
+            }
+        }
+        List<VendorTotal> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int vendor = heap.poll();
+            result.add(new VendorTotal(vendors.get(vendor), spendByVendor[vendor], countByVendor[vendor]));
+        }
+        return result.reversed();
+    }
+
+    public List<VendorTotal> getTopBySpend() {
+        return topBySpend;
+    }
+
+    public List<VendorTotal> getTopByCount() {
+        return topByCount;
+    }
+
+    public QuantileSketch getDeposits() {
+        return deposits;
+    }
+
+    public QuantileSketch getPayments() {
+        return payments;
+    }
+
+    /**
+     * average deposit in cents, 0 if there are none
+     */
+    public long getAverageDepositCents() {
+        return average(depositCents, deposits.getCount());
+    }
+
+    /**
+     * average payment in cents (positive), 0 if there are none
+     */
+    public long getAveragePaymentCents() {
+        return average(paymentCents, payments.getCount());
+    }
+
+    static long average(long cents, long count) {
+        return count == 0 ? 0 : Math.round((double) cents / count);
+    }
+
+    /**
+     * adds the two top lists and the amounts table, the same text for the screen and the command line
+     */
+    public void appendReport(RenderBuffer frame) {
+        if (deposits.getCount() + payments.getCount() == 0) {
+            frame.line("  No transactions found.");
+            return;
+        }
+        frame.line("  TOP VENDORS BY SPEND");
+        appendVendors(frame, topBySpend);
+        frame.line();
+        frame.line("  TOP VENDORS BY TRANSACTIONS");
+        appendVendors(frame, topByCount);
+        frame.line();
+
+        QuantileSketch all = new QuantileSketch();
+        all.merge(deposits);
+        all.merge(payments);
+        frame.line(String.format("  %-10s %11s %16s %16s %16s %16s",
+                "AMOUNTS", "COUNT", "AVERAGE", "MEDIAN", "p90", "p99"));
+        appendAmounts(frame, "Deposits", deposits, getAverageDepositCents());
+        appendAmounts(frame, "Payments", payments, getAveragePaymentCents());
+        appendAmounts(frame, "All", all, average(depositCents + paymentCents, all.getCount()));
+    }
+
+    private static void appendVendors(RenderBuffer frame, List<VendorTotal> vendors) {
+        frame.line(String.format("  %4s  %-30s %18s %11s", "#", "VENDOR", "PAID", "COUNT"));
+        int rank = 1;
+        for (VendorTotal vendor : vendors) {
+            frame.line(String.format("  %4d  %-30s %18s %,11d", rank++, truncate(vendor.getVendor(), 30),
+                    "$" + Money.formatWithCommas(vendor.getPaymentCents()), vendor.getCount()));
+        }
+    }
+
+    private static void appendAmounts(RenderBuffer frame, String type, QuantileSketch sketch, long averageCents) {
+        frame.line(String.format("  %-10s %,11d %16s %16s %16s %16s", type, sketch.getCount(),
+                "$" + Money.formatWithCommas(averageCents),
+                "$" + Money.formatWithCommas(sketch.quantile(0.50)),
+                "$" + Money.formatWithCommas(sketch.quantile(0.90)),
+                "$" + Money.formatWithCommas(sketch.quantile(0.99))));
+    }
+
+    private static String truncate(String text, int length) {
+        return text.length() <= length ? text : text.substring(0, length - 3) + "...";
+    }
+}
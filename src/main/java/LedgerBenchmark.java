@@ -0,0 +1,223 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LedgerBenchmark times the hot paths of the app on synthetic ledgers, so we can tell
+ * if a change makes loading, searching, sorting or printing faster or slower
+ *
+ *   java -Xmx4g -cp out LedgerBenchmark [ROWS ...] [--warmup N] [--iterations N] [--only NAME]
+ *
+ * ROWS defaults to 10000 and 1000000 (add 10000000 with a big enough heap)
+ * for every size a ledger is generated (LedgerGenerator, always the same seed), then each
+ * benchmark runs a few warmup iterations (so the JIT is done) and then the measured ones
+ *
+ * what it measures:
+ *   parse      TransactionParser on every line (what Transaction.fromCSVLine does)
+ *   load       LedgerLoader reading the whole file (parallel chunks, no snapshot)
+ *   index      building the DateIndex (sorting all rows by date)
+ *   filter     a one month range out of the DateIndex (what the reports do)
+ *   search     CompiledQuery with a vendor filter over the SearchIndex (custom search)
+ *   stats      the PeriodRollup plus a year of totals and the statistics box
+ *   sort       sorting all rows newest first (the ledger screen order)
+ *   encode     LedgerFileWriter writing every row as CSV (rewrites and exports)
+ *   render     one ledger page of 50 rows into a RenderBuffer
+ *
+ * for each one it prints the rows one operation goes through (a page for render, a month for
+ * filter, the vendor's rows for search, the whole ledger for the rest), the average and best time per operation, rows per second and
+ * the bytes allocated per operation (by the benchmark thread, the parallel load also
+ * allocates on the fork-join threads, those aren't counted)
+ *
+ * it is a plain main() on purpose: the classes live in the default package, which
+ * JMH's generated code can't import
+ */
+public class LedgerBenchmark {
+    private static final long[] DEFAULT_ROWS = {10_000, 1_000_000};
+    private static final int PAGE_SIZE = 50;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink; // keeps the JIT from throwing results away
+
+    /**
+     * one thing to measure, returns something derived from the work so it can't be skipped
+     */
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Long> sizes = new ArrayList<>();
+        int warmup = 3;
+        int iterations = 5;
+        String only = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--only":
+                    only = args[++i];
+                    break;
+                default:
+                    sizes.add(Long.parseLong(args[i].replace("_", "")));
+            }
+        }
+        if (sizes.isEmpty()) {
+            for (long rows : DEFAULT_ROWS) {
+                sizes.add(rows);
+            }
+        }
+
+        PrintStream results = System.out;
+        results.println("java " + Runtime.version() + ", " + Runtime.getRuntime().availableProcessors()
+                + " cpus, max heap " + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB"
+                + ", warmup " + warmup + ", iterations " + iterations);
+        results.printf("%-8s %11s %12s %12s %14s %16s%n",
+                "bench", "rows", "avg ms/op", "best ms/op", "rows/s", "alloc bytes/op");
+
+        for (long rows : sizes) {
+            Path ledger = Files.createTempFile("ledger-benchmark", ".csv");
+            try {
+                new LedgerGenerator(rows, 42).write(ledger, Runtime.getRuntime().availableProcessors());
+                // the loader and the indexes print progress messages, those don't belong in the results
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try {
+                    runAll(ledger, warmup, iterations, only, results);
+                } finally {
+                    System.setOut(results);
+                }
+            } finally {
+                Files.deleteIfExists(ledger);
+            }
+        }
+        if (sink == 42) {
+            results.println(); // practically never true, it only has to look possible to the JIT
+        }
+    }
+
+    private static void runAll(Path ledger, int warmup, int iterations, String only, PrintStream results)
+            throws Exception {
+        TransactionStore store = LedgerLoader.load(ledger);
+        int rows = store.size();
+        byte[][] lines = readLines(ledger, rows);
+        DateIndex dateIndex = new DateIndex(store);
+        SearchIndex searchIndex = new SearchIndex(store);
+        PeriodRollup rollup = new PeriodRollup(store);
+        LocalDate newest = LocalDate.ofEpochDay(store.getEpochDay(dateIndex.all().get(0)));
+        LocalDate monthStart = newest.withDayOfMonth(1);
+        SearchCriteria vendorSearch = new SearchCriteria(null, null, null, "kang", null);
+        DateIndex.Range newestFirst = dateIndex.all();
+        RenderBuffer frame = new RenderBuffer(16 * 1024);
+
+        measure("parse", rows, warmup, iterations, only, results, () -> {
+            long total = 0;
+            for (byte[] line : lines) {
+                total += TransactionParser.parse(line, 0, line.length).getAmountCents();
+            }
+            return total;
+        });
+        measure("load", rows, warmup, iterations, only, results, () -> LedgerLoader.load(ledger).size());
+        measure("index", rows, warmup, iterations, only, results, () -> new DateIndex(store).size());
+        // only the month is visited, so that is what rows/s is counted over
+        int monthRows = dateIndex.between(monthStart, newest).size();
+        measure("filter", monthRows, warmup, iterations, only, results, () -> {
+            DateIndex.Range range = dateIndex.between(monthStart, newest);
+            long total = 0;
+            for (int position = 0; position < range.size(); position++) {
+                total += store.getAmountCents(range.get(position));
+            }
+            return total;
+        });
+        // the search walks the posting lists of the matching vendors, not the whole ledger
+        int vendorRows = CompiledQuery.compile(vendorSearch, dateIndex, searchIndex).run().length;
+        measure("search", vendorRows, warmup, iterations, only, results,
+                () -> CompiledQuery.compile(vendorSearch, dateIndex, searchIndex).run().length);
+        measure("stats", rows, warmup, iterations, only, results, () -> {
+            PeriodRollup fresh = new PeriodRollup(store);
+            PeriodTotals year = rollup.between(newest.minusYears(1), newest, dateIndex);
+            frame.text().setLength(0);
+            DisplayHelper.appendStatistics(frame, year);
+            return fresh.monthCount() + year.getBalanceCents() + frame.length();
+        });
+        measure("sort", rows, warmup, iterations, only, results, () -> {
+            int[] all = store.allRows();
+            dateIndex.sortNewestFirst(all);
+            return all[0];
+        });
+        measure("encode", rows, warmup, iterations, only, results, () -> {
+            LedgerFileWriter writer = new LedgerFileWriter(Channels.newChannel(OutputStream.nullOutputStream()));
+            for (int row = 0; row < rows; row++) {
+                writer.write(store.get(row));
+            }
+            writer.flush();
+            return writer.getRowCount();
+        });
+        measure("render", Math.min(PAGE_SIZE, rows), warmup, iterations, only, results, () -> {
+            frame.text().setLength(0);
+            DisplayHelper.appendTableHeader(frame);
+            for (int position = 0; position < Math.min(PAGE_SIZE, newestFirst.size()); position++) {
+                DisplayHelper.appendTransactionRow(frame.text(), store.get(newestFirst.get(position)));
+                frame.line();
+            }
+            return frame.length();
+        });
+    }
+
+    // runs the warmup, then the measured iterations, and prints one result line
+    private static void measure(String name, long rows, int warmup, int iterations, String only,
+                                PrintStream results, Operation operation) throws Exception {
+        if (only != null && !only.equals(name)) {
+            return;
+        }
+        for (int i = 0; i < warmup; i++) {
+            sink += operation.run();
+        }
+        long threadId = Thread.currentThread().threadId();
+        long totalNanos = 0;
+        long bestNanos = Long.MAX_VALUE;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            sink += operation.run();
+            long nanos = System.nanoTime() - start;
+            totalBytes += THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+            totalNanos += nanos;
+            bestNanos = Math.min(bestNanos, nanos);
+        }
+        double averageNanos = (double) totalNanos / iterations;
+        results.printf("%-8s %,11d %12.3f %12.3f %,14.0f %,16d%n", name, rows,
+                averageNanos / 1e6, bestNanos / 1e6, rows / (averageNanos / 1e9), totalBytes / iterations);
+    }
+
+    // every line of the file as UTF-8 bytes, for timing the parser without the file reading
+    // (read a line at a time, so only the byte arrays stay in memory, not the file as Strings too)
+    private static byte[][] readLines(Path ledger, int rows) throws IOException {
+        byte[][] lines = new byte[rows][];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(ledger, StandardCharsets.UTF_8)) {
+            String line;
+            while (count < rows && (line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    lines[count++] = line.getBytes(StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return Arrays.copyOf(lines, count);
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * LedgerFileWriter writes transactions as CSV lines to a channel
+ *
+ * every line is built in the same StringBuilder (see TransactionFormat),
+ * encoded straight into one big direct buffer, and the buffer goes to the channel
+ * only when it is full, so a rewrite of a huge ledger is a few large writes
+ *
+ * the lines are exactly what Transaction.toCSVFormat() gives, each followed by '\n'
+ * text that can't be encoded (like half of a surrogate pair) becomes '?', the same as
+ * String.getBytes() does, so a bad character never cuts a line short
+ */
+public class LedgerFileWriter {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20; // 1 MB
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder(128);
+    private long rowCount;
+
+    public LedgerFileWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public LedgerFileWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * adds one transaction as a CSV line
+     */
+    public void write(Transaction transaction) throws IOException {
+        line.setLength(0);
+        TransactionFormat.appendCsv(line, transaction);
+        line.append('\n');
+        put(line);
+        rowCount++;
+    }
+
+    /**
+     * adds a line of plain text (like a header), the '\n' is added here
+     */
+    public void writeLine(String text) throws IOException {
+        line.setLength(0);
+        line.append(text).append('\n');
+        put(line);
+    }
+
+    /**
+     * writes whatever is still in the buffer to the channel
+     * (the channel itself isn't forced or closed, that's up to the caller)
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    // encodes the text into the buffer, flushing first if it doesn't fit
+    private void put(CharSequence text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        CoderResult result = encoder.encode(chars, buffer, true);
+        while (result.isOverflow()) {
+            flush();
+            result = encoder.encode(chars, buffer, true);
+        }
+        if (result.isError()) {
+            result.throwException(); // can't happen with REPLACE, but never write half a line
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * LedgerGenerator writes big fake ledgers for load and scale testing
+ * (the transactions.csv in the repo has 55 lines, that doesn't tell us anything)
+ *
+ *   java -cp out LedgerGenerator --rows 1000000 --out big.csv [--vendors 500]
+ *        [--from 2000-01-01] [--to 2025-12-31] [--deposits 0.25] [--corrupt 0]
+ *        [--threads N] [--seed 42]
+ *
+ *   --vendors   how many different vendors there are (a few are much more popular than the rest)
+ *   --from/--to the dates are spread evenly between these two
+ *   --deposits  share of the rows that are deposits, the rest are payments
+ *   --corrupt   share of the rows that are broken on purpose (bad date, bad amount,
+ *               missing column, cut off line), to test the skip-and-report paths
+ *
+ * the lines are exactly what Transaction.toCSVFormat() gives, one per line like LedgerFileWriter
+ *
+ * the rows are made in blocks, every block has its own random numbers derived from the seed
+ * and the block number, so the blocks can be made on several threads and the file is still
+ * the same for the same seed no matter how many threads were used
+ * blocks are written in order as they finish, only a few are in memory at a time,
+ * so 100M rows need no more memory than 10K
+ */
+public class LedgerGenerator {
+    public static final int DEFAULT_VENDORS = 500;
+    // fixed dates so a seed always gives the same file, all in the past so the import accepts them
+    public static final LocalDate DEFAULT_FROM = LocalDate.of(2000, 1, 1);
+    public static final LocalDate DEFAULT_TO = LocalDate.of(2025, 12, 31);
+    public static final double DEFAULT_DEPOSITS = 0.25;
+
+    // rows made together by one thread (a few MB of text)
+    private static final int BLOCK_ROWS = 50_000;
+
+    private static final String[] VENDOR_NAMES = {
+            "Arasaka Corp", "Militech", "Kang Tao", "Tom's Diner", "Afterlife", "Wakako Okada",
+            "Biotechnica", "Trauma Team", "Night City Transit", "Lizzie's Bar", "Kiroshi Optics",
+            "Regina Jones", "Misty's Esoterica", "Victor Vector", "El Coyote Cojo", "Petrochem",
+            "Zetatech", "Dynalar", "Budget Arms", "Kaukaz", "Chevillon", "Rayfield", "Mizutani",
+            "Delamain Cabs", "Crystal Palace", "Jinguji", "Netwatch", "Trauma Drama", "Cherry Blossom",
+            "Kabuki Market", "Red Dirt Bar", "Coach Fred"
+    };
+    private static final String[] DISTRICTS = {
+            "Watson", "Westbrook", "City Center", "Heywood", "Santo Domingo", "Pacifica", "Badlands",
+            "Japantown", "Kabuki", "Little China", "Northside", "Rancho Coronado", "Vista del Rey"
+    };
+    private static final String[] PAYMENTS = {
+            "Cyberware install", "Ammo restock", "Rent", "Noodles", "Braindance rental", "Car repair",
+            "Ripperdoc visit", "Weapon mods", "Drinks", "Data shard", "Clothes", "Groceries",
+            "Medical bill", "Cab ride", "Netrunner gear"
+    };
+    private static final String[] DEPOSITS = {
+            "Gig payment", "Bounty", "Salary", "Sold loot", "Fixer payout", "Refund", "Race winnings"
+    };
+
+    private final long rows;
+    private final String[] vendors;
+    private final long firstDay;
+    private final int days;
+    private final double depositShare;
+    private final double corruptShare;
+    private final long seed;
+
+    /**
+     * rows with the default vendors, dates and deposit share, nothing corrupted
+     */
+    public LedgerGenerator(long rows, long seed) {
+        this(rows, DEFAULT_VENDORS, DEFAULT_FROM, DEFAULT_TO, DEFAULT_DEPOSITS, 0, seed);
+    }
+
+    public LedgerGenerator(long rows, int vendorCount, LocalDate from, LocalDate to,
+                           double depositShare, double corruptShare, long seed) {
+        if (rows < 0 || vendorCount < 1 || to.isBefore(from)
+                || depositShare < 0 || depositShare > 1 || corruptShare < 0 || corruptShare > 1) {
+            throw new IllegalArgumentException("rows >= 0, vendors >= 1, from <= to, "
+                    + "deposits and corrupt between 0 and 1");
+        }
+        this.rows = rows;
+        this.vendors = vendorNames(vendorCount);
+        this.firstDay = from.toEpochDay();
+        this.days = (int) (to.toEpochDay() - firstDay + 1);
+        this.depositShare = depositShare;
+        this.corruptShare = corruptShare;
+        this.seed = seed;
+    }
+
+    /**
+     * writes the ledger to path (replacing it) using the given number of threads
+     * returns how many of the rows were corrupted on purpose
+     */
+    public long write(Path path, int threads) throws IOException {
+        long blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        long corrupted = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // a couple of blocks per thread in flight, written in order as they are done
+            ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+            long next = 0;
+            while (next < blocks || !pending.isEmpty()) {
+                while (next < blocks && pending.size() < Math.max(1, threads) * 2) {
+                    long block = next++;
+                    pending.add(pool.submit(() -> makeBlock(block)));
+                }
+                Block block = pending.poll().get();
+                ByteBuffer buffer = ByteBuffer.wrap(block.bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                corrupted += block.corrupted;
+            }
+            channel.force(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while generating " + path, e);
+        } catch (ExecutionException e) {
+            throw new IOException("generating " + path + " failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return corrupted;
+    }
+
+    // the text of one block and how many of its rows are broken
+    private static class Block {
+        final byte[] bytes;
+        final int corrupted;
+
+        Block(byte[] bytes, int corrupted) {
+            this.bytes = bytes;
+            this.corrupted = corrupted;
+        }
+    }
+
+    private Block makeBlock(long block) {
+        // the numbers only depend on the seed and the block, not on which thread makes it
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + block);
+        long first = block * BLOCK_ROWS;
+        int count = (int) Math.min(BLOCK_ROWS, rows - first);
+        StringBuilder text = new StringBuilder(count * 72);
+        int corrupted = 0;
+        for (int i = 0; i < count; i++) {
+            int start = text.length();
+            TransactionFormat.appendCsv(text, makeTransaction(random));
+            if (corruptShare > 0 && random.nextDouble() < corruptShare) {
+                corrupt(text, start, random);
+                corrupted++;
+            }
+            text.append('\n');
+        }
+        return new Block(text.toString().getBytes(StandardCharsets.UTF_8), corrupted);
+    }
+
+    private Transaction makeTransaction(SplittableRandom random) {
+        LocalDate date = LocalDate.ofEpochDay(firstDay + random.nextInt(days));
+        LocalTime time = LocalTime.ofSecondOfDay(random.nextInt(24 * 60 * 60));
+        // a few vendors get most of the business, like in a real ledger
+        String vendor = vendors[(int) (vendors.length * Math.pow(random.nextDouble(), 3))];
+        boolean deposit = random.nextDouble() < depositShare;
+        String description = deposit
+                ? DEPOSITS[random.nextInt(DEPOSITS.length)]
+                : PAYMENTS[random.nextInt(PAYMENTS.length)];
+        // amounts spread over orders of magnitude: mostly small payments, bigger deposits
+        double dollars = deposit
+                ? Math.exp(random.nextDouble(Math.log(50), Math.log(50_000)))
+                : Math.exp(random.nextDouble(0, Math.log(5_000)));
+        long cents = Math.max(1, Math.round(dollars * 100));
+        return new Transaction(date, time, description, vendor, deposit ? cents : -cents);
+    }
+
+    // breaks the line that starts at start in one of the ways real files get broken
+    private static void corrupt(StringBuilder text, int start, SplittableRandom random) {
+        switch (random.nextInt(4)) {
+            case 0: // impossible date
+                text.replace(start, start + 10, "2077-13-45");
+                break;
+            case 1: // amount that isn't a number
+                text.replace(text.lastIndexOf("|") + 1, text.length(), "12.3.4eddies");
+                break;
+            case 2: // a column went missing
+                int pipe = text.indexOf("|", start);
+                text.delete(pipe, text.indexOf("|", pipe + 1));
+                break;
+            default: // the write was cut off
+                text.setLength(start + 1 + random.nextInt(Math.max(1, text.length() - start - 1) / 2));
+                break;
+        }
+    }
+
+    // the first names are used as they are, after that they get a district and then a number,
+    // like "Militech Watson" or "Militech Watson 3"
+    private static String[] vendorNames(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            String name = VENDOR_NAMES[i % VENDOR_NAMES.length];
+            int branch = i / VENDOR_NAMES.length;
+            if (branch > 0) {
+                name += " " + DISTRICTS[(branch - 1) % DISTRICTS.length];
+                int number = (branch - 1) / DISTRICTS.length;
+                if (number > 0) {
+                    name += " " + (number + 1);
+                }
+            }
+            names[i] = name;
+        }
+        return names;
+    }
+
+    public static void main(String[] args) {
+        long rows = -1;
+        String out = null;
+        int vendorCount = DEFAULT_VENDORS;
+        LocalDate from = DEFAULT_FROM;
+        LocalDate to = DEFAULT_TO;
+        double depositShare = DEFAULT_DEPOSITS;
+        double corruptShare = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 42;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("option " + args[i] + " needs a value");
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--rows":
+                        rows = Long.parseLong(value.replace("_", ""));
+                        break;
+                    case "--out":
+                        out = value;
+                        break;
+                    case "--vendors":
+                        vendorCount = Integer.parseInt(value);
+                        break;
+                    case "--from":
+                        from = LocalDate.parse(value);
+                        break;
+                    case "--to":
+                        to = LocalDate.parse(value);
+                        break;
+                    case "--deposits":
+                        depositShare = Double.parseDouble(value);
+                        break;
+                    case "--corrupt":
+                        corruptShare = Double.parseDouble(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option '" + args[i] + "'");
+                }
+            }
+            if (rows < 0 || out == null) {
+                throw new IllegalArgumentException("--rows and --out are needed");
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // NumberFormatException is an IllegalArgumentException too
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: LedgerGenerator --rows N --out FILE [--vendors N] [--from yyyy-MM-dd]"
+                    + " [--to yyyy-MM-dd] [--deposits 0.25] [--corrupt 0.001] [--threads N] [--seed 42]");
+            System.exit(CommandLine.BAD_USAGE);
+            return;
+        }
+
+        try {
+            LedgerGenerator generator = new LedgerGenerator(rows, vendorCount, from, to,
+                    depositShare, corruptShare, seed);
+            long start = System.nanoTime();
+            long corrupted = generator.write(Paths.get(out), threads);
+            long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            double megabytes = Paths.get(out).toFile().length() / (1024.0 * 1024.0);
+            System.out.printf("Wrote %,d transactions (%,d corrupted) to %s in %d ms (%.1f MB/s).%n",
+                    rows, corrupted, out, millis, megabytes * 1000 / millis);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(CommandLine.BAD_USAGE);
+        } catch (IOException e) {
+            System.err.println("Error writing " + out + ": " + e.getMessage());
+            System.exit(CommandLine.FAILED);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * LedgerLoader reads the whole transactions file as fast as it can
+ * the file is memory mapped and cut into chunks that always end on a line break,
+ * the chunks are parsed in parallel on the fork-join pool and then glued back together in file order
+ */
+public class LedgerLoader {
+    // files smaller than this are parsed as a single chunk on the calling thread
+    private static final long PARALLEL_THRESHOLD = 4L * 1024 * 1024;
+    // how big each chunk roughly is (the real end is moved forward to the next line break)
+    private static final long CHUNK_SIZE = 16L * 1024 * 1024;
+    // how many bytes we read at a time while looking for the next line break
+    private static final int BOUNDARY_SCAN_SIZE = 64 * 1024;
+
+    /**
+     * loads all transactions from the given file into a column store
+     * corrupted lines are skipped and reported the same way FileManager always did
+     */
+    public static TransactionStore load(Path path) throws IOException {
+        TransactionStore transactions = new TransactionStore();
+        loadInto(path, 0, 0, transactions);
+        return transactions;
+    }
+
+    /**
+     * parses the file from startOffset to the end and appends the rows to the given store
+     * (LedgerSnapshot uses this to read only what was added after the snapshot)
+     * linesBefore is how many lines come before startOffset, so warnings show the real line number
+     *
+     * returns how many lines were read
+     */
+    public static long loadInto(Path path, long startOffset, long linesBefore,
+                                TransactionStore transactions) throws IOException {
+        long startNanos = System.nanoTime();
+
+        ChunkResult[] results;
+        long bytesRead;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            bytesRead = Math.max(0, fileSize - startOffset);
+            long[] boundaries = findChunkBoundaries(channel, Math.min(startOffset, fileSize), fileSize);
+            results = new ChunkResult[boundaries.length - 1];
+
+            ParseChunks task = new ParseChunks(channel, boundaries, results, 0, results.length);
+            if (bytesRead < PARALLEL_THRESHOLD) {
+                task.compute(); // not worth waking up other threads for a small file
+            } else {
+                ForkJoinPool.commonPool().invoke(task);
+            }
+        } catch (ChunkFailure e) {
+            throw e.getCause();
+        }
+
+        // merges the chunks back together in file order
+        int sizeBefore = transactions.size();
+        long lineCount = 0; // line numbers inside a chunk start at 1, this turns them into file line numbers
+        for (ChunkResult result : results) {
+            transactions.addAll(result.transactions);
+            for (int i = 0; i < result.corruptedLines.size(); i++) {
+                long lineNumber = linesBefore + lineCount + result.corruptedLineNumbers.get(i);
+                System.out.println("Warning: Skipped corrupted line " + lineNumber + ": "
+                        + result.corruptedLines.get(i));
+            }
+            lineCount += result.lineCount;
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Metrics.record("parse", elapsedNanos);
+        Metrics.count("parse.lines", lineCount);
+        Metrics.count("parse.corrupt", lineCount - (transactions.size() - sizeBefore));
+        long elapsedMillis = elapsedNanos / 1_000_000;
+        System.out.println("Loaded " + (transactions.size() - sizeBefore) + " transactions from file in "
+                + elapsedMillis + " ms (" + throughput(bytesRead, elapsedMillis) + " MB/s).");
+        return lineCount;
+    }
+
+    /**
+     * works out where every chunk starts and ends
+     * each boundary sits right after a '\n' so no line is ever split between two chunks
+     */
+    private static long[] findChunkBoundaries(FileChannel channel, long start, long fileSize) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        if (fileSize - start >= PARALLEL_THRESHOLD) {
+            ByteBuffer scan = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+            long position = start + CHUNK_SIZE;
+            while (position < fileSize) {
+                long lineEnd = findNextLineBreak(channel, position, fileSize, scan);
+                if (lineEnd >= fileSize) {
+                    break;
+                }
+                boundaries.add(lineEnd + 1);
+                position = lineEnd + 1 + CHUNK_SIZE;
+            }
+        }
+        boundaries.add(fileSize);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    // returns the position of the first '\n' at or after position (or fileSize if there is none)
+    private static long findNextLineBreak(FileChannel channel, long position, long fileSize,
+                                          ByteBuffer scan) throws IOException {
+        while (position < fileSize) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * parses one chunk of bytes into transactions
+     * line breaks are handled like BufferedReader.readLine does (\n, \r\n or a lone \r)
+     */
+    static ChunkResult parseChunk(byte[] bytes, int length) {
+        ChunkResult result = new ChunkResult();
+        int lineStart = 0;
+        int i = 0;
+        while (i <= length) {
+            if (i == length || bytes[i] == '\n' || bytes[i] == '\r') {
+                if (i < length || i > lineStart) {
+                    result.lineCount++;
+                }
+                if (i > lineStart) {
+                    parseLine(bytes, lineStart, i, result);
+                }
+                // treats \r\n as one line break
+                if (i < length && bytes[i] == '\r' && i + 1 < length && bytes[i + 1] == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+            i++;
+        }
+        return result;
+    }
+
+    private static void parseLine(byte[] bytes, int start, int end, ChunkResult result) {
+        // skips empty lines
+        if (TransactionParser.isBlank(bytes, start, end)) {
+            return;
+        }
+        try {
+            TransactionParser.parseInto(bytes, start, end, result.transactions);
+        } catch (Exception e) {
+            // if a line is corrupted, skips it but keeps going
+            result.corruptedLineNumbers.add(result.lineCount);
+            result.corruptedLines.add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+    }
+
+    // megabytes per second, so the load speed can be compared between versions
+    private static String throughput(long bytes, long millis) {
+        double seconds = Math.max(millis, 1) / 1000.0;
+        return String.format("%.1f", bytes / (1024.0 * 1024.0) / seconds);
+    }
+
+    /**
+     * what one chunk produced
+     */
+    static class ChunkResult {
+        final TransactionStore transactions = new TransactionStore();
+        final List<String> corruptedLines = new ArrayList<>();
+        final List<Integer> corruptedLineNumbers = new ArrayList<>(); // 1-based, inside this chunk
+        int lineCount = 0;
+    }
+
+    /**
+     * fork-join task that splits the chunk list in half until one chunk is left, then parses it
+     */
+    private static class ParseChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // fork-join tasks are Serializable, but these never leave the pool, so nothing here is
+        private final transient FileChannel channel;
+        private final long[] boundaries;
+        private final transient ChunkResult[] results;
+        private final int from;
+        private final int to;
+
+        ParseChunks(FileChannel channel, long[] boundaries, ChunkResult[] results, int from, int to) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseChunks(channel, boundaries, results, from, middle),
+                        new ParseChunks(channel, boundaries, results, middle, to));
+                return;
+            }
+            for (int chunk = from; chunk < to; chunk++) {
+                long start = boundaries[chunk];
+                int length = (int) (boundaries[chunk + 1] - start);
+                try {
+                    byte[] bytes = new byte[length];
+                    if (length > 0) {
+                        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                        mapped.get(bytes);
+                    }
+                    results[chunk] = parseChunk(bytes, length);
+                } catch (IOException e) {
+                    throw new ChunkFailure(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * carries an IOException out of the fork-join pool
+     */
+    private static class ChunkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LedgerLock keeps several copies of the app (and several threads in one copy) from
+ * stepping on each other when they use the same ledger
+ *
+ * there are two locks, so reading the ledger never waits for someone adding a transaction:
+ *  - the journal lock, held while a transaction is appended to transactions.journal
+ *  - the ledger lock, shared while transactions.csv is read, exclusive while it is changed
+ *    (compacting the journal into it, or rewriting it)
+ * (plus a backup lock so only one copy of the app writes to the backups folder at a time)
+ * locks are always taken in the order backup, journal, ledger, that keeps us out of deadlocks
+ *
+ * between processes they are FileChannel locks on single bytes of transactions.lock, inside the
+ * app they are a ReentrantLock and a ReentrantReadWriteLock (a JVM can't hold the same file
+ * lock twice, so the file lock is only taken by the first holder and released by the last)
+ *
+ * if transactions.lock can't be used (like a read-only folder) we warn once and only
+ * lock inside the app
+ *
+ * usage, like any lock:
+ *   LedgerLock lock = LedgerLock.journal();
+ *   try { ... } finally { lock.unlock(); }
+ * (LedgerRepository hands out the read lock of the in-memory ledger the same way, that one
+ * only works inside the app, see LedgerRepository.lockForReading())
+ */
+public class LedgerLock {
+    private static final String LOCK_NAME = "transactions.lock";
+    private static final long JOURNAL_BYTE = 0;
+    private static final long LEDGER_BYTE = 1;
+    private static final long BACKUP_BYTE = 2;
+    // longest pause between two tries when another copy of the app holds a lock
+    private static final long MAX_WAIT_MILLIS = 20;
+
+    private static final Exclusive journalLock = new Exclusive(JOURNAL_BYTE);
+    private static final Exclusive backupLock = new Exclusive(BACKUP_BYTE);
+    private static final ReentrantReadWriteLock ledgerLock = new ReentrantReadWriteLock();
+
+    private static FileChannel lockFile;       // opened on first use, never closed
+    private static FileLock ledgerFileLock;    // exclusive for the writer, or shared for all readers
+    private static int ledgerReaders;          // readers in this process holding ledgerFileLock
+    private static final Object readers = new Object(); // guards ledgerReaders and the shared ledgerFileLock
+    private static boolean warned;             // the lock file problem was already shown
+
+    private final Runnable release;
+
+    private LedgerLock(Runnable release) {
+        this.release = release;
+    }
+
+    /**
+     * locks the journal, for appending to it
+     */
+    public static LedgerLock journal() {
+        return journalLock.acquire();
+    }
+
+    /**
+     * locks the backups folder, so two copies of the app don't write backups at the same time
+     */
+    public static LedgerLock backup() {
+        return backupLock.acquire();
+    }
+
+    /**
+     * locks transactions.csv for reading, any number of readers can hold this together
+     */
+    public static LedgerLock readLedger() {
+        ledgerLock.readLock().lock();
+        if (ledgerLock.isWriteLockedByCurrentThread()) {
+            // this thread already has the file locked for writing, which covers reading too
+            return new LedgerLock(() -> ledgerLock.readLock().unlock());
+        }
+        try {
+            synchronized (readers) {
+                if (ledgerReaders == 0) {
+                    ledgerFileLock = lockByte(LEDGER_BYTE, true);
+                }
+                ledgerReaders++;
+            }
+        } catch (RuntimeException e) {
+            ledgerLock.readLock().unlock();
+            throw e;
+        }
+        return new LedgerLock(LedgerLock::releaseRead);
+    }
+
+    /**
+     * locks transactions.csv for changing it, nobody else can read or change it meanwhile
+     */
+    public static LedgerLock writeLedger() {
+        if (ledgerLock.getReadHoldCount() > 0 && !ledgerLock.isWriteLockedByCurrentThread()) {
+            // a read lock can't be turned into a write lock, this would wait forever
+            throw new IllegalStateException("can't lock the ledger for writing while reading it");
+        }
+        ledgerLock.writeLock().lock();
+        try {
+            if (ledgerLock.getWriteHoldCount() == 1) {
+                ledgerFileLock = lockByte(LEDGER_BYTE, false);
+            }
+        } catch (RuntimeException e) {
+            ledgerLock.writeLock().unlock();
+            throw e;
+        }
+        return new LedgerLock(LedgerLock::releaseWrite);
+    }
+
+    /**
+     * locks a lock that only works inside the app, so it is used like the file locks
+     */
+    static LedgerLock of(Lock lock) {
+        lock.lock();
+        return new LedgerLock(lock::unlock);
+    }
+
+    /**
+     * gives the lock back
+     */
+    public void unlock() {
+        release.run();
+    }
+
+    private static void releaseRead() {
+        try {
+            synchronized (readers) {
+                ledgerReaders--;
+                if (ledgerReaders == 0) {
+                    ledgerFileLock = release(ledgerFileLock);
+                }
+            }
+        } finally {
+            ledgerLock.readLock().unlock();
+        }
+    }
+
+    private static void releaseWrite() {
+        try {
+            if (ledgerLock.getWriteHoldCount() == 1) {
+                ledgerFileLock = release(ledgerFileLock);
+            }
+        } finally {
+            ledgerLock.writeLock().unlock();
+        }
+    }
+
+    // waits until the byte at position can be locked by this process, null if the lock file can't be used
+    //
+    // this polls with tryLock instead of a blocking lock(): file locks belong to the whole process,
+    // so while one of our threads reads the ledger and another waits for the journal, the OS sees
+    // "this process waits for that one and that one for this one" and fails the lock with
+    // EDEADLK, even though our reader is about to let go
+    private static FileLock lockByte(long position, boolean shared) {
+        boolean interrupted = false;
+        try {
+            long waitMillis = 1;
+            while (true) {
+                FileLock lock = lockFile().tryLock(position, 1, shared);
+                if (lock != null) {
+                    return lock;
+                }
+                try {
+                    Thread.sleep(waitMillis);
+                } catch (InterruptedException e) {
+                    interrupted = true; // like ReentrantLock.lock(), we keep waiting
+                }
+                waitMillis = Math.min(waitMillis * 2, MAX_WAIT_MILLIS);
+            }
+        } catch (IOException e) {
+            warnOnce(e);
+            return null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static synchronized void warnOnce(IOException e) {
+        if (!warned) {
+            warned = true;
+            System.out.println("Warning: can't lock " + LOCK_NAME + " (" + e.getMessage()
+                    + "), other copies of the app using this ledger aren't locked out.");
+        }
+    }
+
+    private static synchronized FileChannel lockFile() throws IOException {
+        if (lockFile == null || !lockFile.isOpen()) {
+            lockFile = FileChannel.open(new File(LOCK_NAME).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return lockFile;
+    }
+
+    private static FileLock release(FileLock lock) {
+        if (lock != null && lock.isValid()) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                // closing the channel or ending the process releases it anyway
+                System.out.println("Error releasing ledger lock: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // a lock that only one holder at a time can have, in this process and across processes
+    private static class Exclusive {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long position;
+        private FileLock fileLock;
+
+        Exclusive(long position) {
+            this.position = position;
+        }
+
+        LedgerLock acquire() {
+            lock.lock();
+            try {
+                if (lock.getHoldCount() == 1) {
+                    fileLock = lockByte(position, false);
+                }
+            } catch (RuntimeException e) {
+                lock.unlock();
+                throw e;
+            }
+            return new LedgerLock(this::release);
+        }
+
+        private void release() {
+            try {
+                if (lock.getHoldCount() == 1) {
+                    fileLock = LedgerLock.release(fileLock);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
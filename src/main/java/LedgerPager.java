@@ -0,0 +1,167 @@
+import java.time.LocalDate;
+import java.util.Scanner;
+
+/**
+ * LedgerPager shows a list of transactions one page at a time
+ * only the rows on the visible page are turned into Transaction objects and formatted,
+ * and each page is built in a RenderBuffer and printed with a single write
+ *
+ * the rows have to be newest first (like the date index gives them), that is what
+ * lets "jump to date" find its place with a binary search
+ *
+ * the store is the in-memory ledger, so it is read locked while a page is built
+ * (not while waiting for the user, appends would pile up in the queue meanwhile)
+ */
+public class LedgerPager {
+    // rows per page, can be changed with -Dncm.pageSize=N
+    private static final int PAGE_SIZE = Math.max(5, Integer.getInteger("ncm.pageSize", 20));
+
+    private final Scanner scanner;
+    private final TransactionStore store;
+    private final int count;
+    private final int[] rows;             // rows in the store, position 0 is the newest
+    private final String title;
+    private int first = 0;                // position of the first row on the page
+    private String message = null;        // shown under the table once, like "no such date"
+    private final RenderBuffer frame = new RenderBuffer(2048 + PAGE_SIZE * 160); // reused for every page
+
+    private LedgerPager(Scanner scanner, TransactionStore store, int[] rows, String title) {
+        this.scanner = scanner;
+        this.store = store;
+        this.count = rows.length;
+        this.rows = rows;
+        this.title = title;
+    }
+
+    /**
+     * pages through rows that are already sorted newest first (like query results)
+     * (a copy, not a DateIndex.Range: the index moves rows around when something is appended)
+     */
+    public static LedgerPager of(Scanner scanner, TransactionStore store, int[] rows, String title) {
+        return new LedgerPager(scanner, store, rows, title);
+    }
+
+    /**
+     * shows the first page, if there are more pages the user can move around
+     * until they press ENTER
+     */
+    public void show() {
+        render();
+        if (count <= PAGE_SIZE) {
+            return; // everything fits on one page, nothing to navigate
+        }
+        while (true) {
+            System.out.print("  [N]ext  [P]rev  [F]irst  [L]ast  [J]ump to date  [ENTER] Done: ");
+            String choice = scanner.nextLine().trim().toUpperCase();
+            switch (choice) {
+                case "":
+                case "Q":
+                    return;
+                case "N":
+                    if (first + PAGE_SIZE < count) {
+                        first += PAGE_SIZE;
+                    } else {
+                        message = "Already on the last page.";
+                    }
+                    break;
+                case "P":
+                    if (first > 0) {
+                        first = Math.max(0, first - PAGE_SIZE);
+                    } else {
+                        message = "Already on the first page.";
+                    }
+                    break;
+                case "F":
+                    first = 0;
+                    break;
+                case "L":
+                    first = lastPageStart();
+                    break;
+                case "J":
+                    jumpToDate();
+                    break;
+                default:
+                    message = "Invalid choice! Use N, P, F, L, J or ENTER.";
+                    break;
+            }
+            render();
+        }
+    }
+
+    // asks for a date and moves the page so it starts at the newest transaction on or before it
+    private void jumpToDate() {
+        System.out.print("  Jump to date (yyyy-MM-dd): ");
+        String input = scanner.nextLine().trim();
+        if (!InputValidator.isValidSearchDate(input)) {
+            message = "Invalid date, stayed on this page.";
+            return;
+        }
+        int position;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            position = firstOnOrBefore(LocalDate.parse(input).toEpochDay());
+        } finally {
+            reading.unlock();
+        }
+        if (position == count) {
+            message = "No transactions on or before " + input + ", showing the oldest ones.";
+            position = lastPageStart();
+        }
+        first = position;
+    }
+
+    // first position whose date is on or before the given day (count if there is none)
+    // positions run newest to oldest, so the dates only go down
+    private int firstOnOrBefore(long epochDay) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (store.getEpochDay(rows[middle]) > epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int lastPageStart() {
+        return count == 0 ? 0 : (count - 1) / PAGE_SIZE * PAGE_SIZE;
+    }
+
+    // builds the whole page and prints it at once
+    private void render() {
+        DisplayHelper.appendClearScreen(frame);
+        DisplayHelper.appendHeader(frame, title);
+        if (count == 0) {
+            DisplayHelper.appendNoTransactions(frame);
+        } else {
+            DisplayHelper.appendTableHeader(frame);
+            int last = Math.min(count, first + PAGE_SIZE);
+            LedgerLock reading = LedgerRepository.lockForReading();
+            try {
+                for (int position = first; position < last; position++) {
+                    DisplayHelper.appendTransactionRow(frame.text(), store.get(rows[position]));
+                    frame.line();
+                }
+            } finally {
+                reading.unlock();
+            }
+            DisplayHelper.appendSeparator(frame);
+            if (count <= PAGE_SIZE) {
+                DisplayHelper.appendHint(frame, "  Total transactions: " + count);
+            } else {
+                int page = first / PAGE_SIZE + 1;
+                int pages = (count + PAGE_SIZE - 1) / PAGE_SIZE;
+                DisplayHelper.appendHint(frame, "  Showing " + (first + 1) + "-" + last + " of " + count
+                        + " transactions (page " + page + " of " + pages + ")");
+            }
+        }
+        if (message != null) {
+            DisplayHelper.appendHint(frame, "  " + message);
+            message = null;
+        }
+        frame.print();
+    }
+}
@@ -0,0 +1,513 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LedgerRepository keeps the ledger in memory so the screens don't
+ * re-read transactions.csv every time the user opens a view
+ * it loads the file once, FileManager updates it on every write (new transactions
+ * go to the journal first, see TransactionJournal), and it reloads if the file
+ * was changed outside the app
+ *
+ * the rows are kept in a TransactionStore (columns of primitives), not as Transaction objects,
+ * together with a DateIndex that keeps them sorted by date for the reports
+ * and a PeriodRollup with the monthly totals for the statistics
+ * (plus a SearchIndex for vendor/description searches once somebody searches)
+ *
+ * at startup Main calls loadInBackground(), the file is loaded on a virtual thread while the
+ * menu is already on screen, and the getters wait for it only when a screen needs the data
+ * transactions added meanwhile are queued and merged in when the load is done
+ * (each one has its journal sequence number, so we can tell if the load already read it)
+ *
+ * the store and the indexes are guarded by a read-write lock: rows are only added (and a
+ * reload only swaps them) under the write lock, and whoever walks them holds the read lock:
+ *   LedgerLock reading = LedgerRepository.lockForReading();
+ *   try { DateIndex index = LedgerRepository.getDateIndex(); ... } finally { reading.unlock(); }
+ * appending never waits for readers: if the write lock isn't free, the new row is queued
+ * and merged by the next refresh (every getter and lockForReading() does one)
+ * (the file stamps and the loaded flag are guarded by the class monitor, always taken
+ * after the read-write lock, never before it)
+ */
+public class LedgerRepository {
+    private static TransactionStore store = new TransactionStore();
+    private static DateIndex dateIndex = new DateIndex(store);
+    private static PeriodRollup rollup = new PeriodRollup(store);
+    private static SearchIndex searchIndex = null; // built the first time someone searches
+    private static final Object searchLock = new Object(); // two readers don't build it twice
+    private static boolean loaded = false;
+
+    // write locked while rows are added or the ledger is swapped, read locked while it is walked
+    private static final ReentrantReadWriteLock memory = new ReentrantReadWriteLock();
+
+    // size and last modified time of the file when we last synced with it
+    private static long knownSize = -1;
+    private static long knownModified = -1;
+    // our appends up to this sequence number were already in the file when it was loaded
+    private static long loadedThrough = -1;
+    // bumped by invalidate(), a background load that started before it is thrown away
+    private static int generation;
+
+    // the load started by loadInBackground(), null when none is running
+    private static volatile CompletableFuture<Void> background;
+    // appends not merged into memory yet (the background load was running, or somebody was reading)
+    private static final List<QueuedAppend> queued = new ArrayList<>();
+    private static final Object queueLock = new Object();
+    // what the background loader printed, shown once a screen waits for the data
+    private static HeldOutput heldOutput;
+
+    /**
+     * starts loading the ledger on a virtual thread and returns right away
+     * the getters below wait for it, so nobody sees a half loaded ledger
+     */
+    public static synchronized CompletableFuture<Void> loadInBackground() {
+        if (loaded || background != null) {
+            return background != null ? background : CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> loading = new CompletableFuture<>();
+        int startGeneration = generation;
+        Thread loader = Thread.ofVirtual().name("ledger-loader").unstarted(() -> {
+            Throwable failure = null;
+            try {
+                install(read(), startGeneration);
+            } catch (Throwable e) {
+                // the next getter loads it the normal way (and shows the problem), the queued
+                // appends are merged after that
+                failure = e;
+            }
+            // cleared before the waiting screens wake up, so they go straight to the data
+            background = null;
+            if (failure == null) {
+                loading.complete(null);
+            } else {
+                loading.completeExceptionally(failure);
+            }
+        });
+        // the loader's messages ("Loaded ... transactions") would land in the middle of the menu
+        synchronized (queueLock) {
+            heldOutput = new HeldOutput(System.out, loader);
+            System.setOut(heldOutput.stream);
+        }
+        background = loading;
+        loader.start();
+        return loading;
+    }
+
+    // waits for a running background load, called by every getter before it takes the lock
+    // (the loader needs the lock to hand its result over)
+    private static void awaitBackgroundLoad() {
+        CompletableFuture<Void> loading = background;
+        if (loading != null) {
+            if (!loading.isDone()) {
+                System.out.println("\n  Loading the ledger...");
+            }
+            try {
+                loading.join();
+            } catch (CompletionException e) {
+                System.out.println("Error loading in the background: " + e.getCause().getMessage());
+            }
+        }
+        showHeldOutput();
+    }
+
+    /**
+     * locks the in-memory ledger for reading (loading or refreshing it first), until unlock()
+     * nothing is added to the store or the indexes the getters return, so they can be walked
+     * while other threads append (their rows show up after the lock is given back)
+     * a thread holding it sees the ledger as it was when it locked, even if the file changes
+     */
+    public static LedgerLock lockForReading() {
+        refresh();
+        return LedgerLock.of(memory.readLock());
+    }
+
+    /**
+     * returns the in-memory ledger, loading or reloading it from the file if needed
+     * the store belongs to the repository, don't add rows to it directly
+     * (hold lockForReading() while using it if other threads may be adding rows)
+     */
+    public static TransactionStore getStore() {
+        refresh();
+        memory.readLock().lock();
+        try {
+            return store;
+        } finally {
+            memory.readLock().unlock();
+        }
+    }
+
+    /**
+     * returns the date index over the in-memory ledger, use getStore() on it for the columns
+     * (that way the index and the store always belong together, even after a reload)
+     */
+    public static DateIndex getDateIndex() {
+        refresh();
+        memory.readLock().lock();
+        try {
+            return dateIndex;
+        } finally {
+            memory.readLock().unlock();
+        }
+    }
+
+    /**
+     * returns the monthly totals of the in-memory ledger
+     */
+    public static PeriodRollup getRollup() {
+        refresh();
+        memory.readLock().lock();
+        try {
+            return rollup;
+        } finally {
+            memory.readLock().unlock();
+        }
+    }
+
+    /**
+     * returns the vendor/description search index, building it on first use
+     * (building only reads the store, so the read lock is enough)
+     */
+    public static SearchIndex getSearchIndex() {
+        refresh();
+        memory.readLock().lock();
+        try {
+            synchronized (searchLock) {
+                if (searchIndex == null) {
+                    searchIndex = new SearchIndex(store);
+                }
+                return searchIndex;
+            }
+        } finally {
+            memory.readLock().unlock();
+        }
+    }
+
+    /**
+     * called by FileManager after a transaction was appended to the journal
+     * the CSV file didn't change, so there is no file stamp to check
+     * sequence is what TransactionJournal.append returned
+     *
+     * the row is merged right away if nobody is reading, otherwise it waits in the queue
+     * for the next refresh (so an append never waits for a screen, or for the background load)
+     */
+    static void recordAppend(Transaction transaction, long sequence) {
+        recordAppends(List.of(transaction), sequence);
+    }
+
+    /**
+     * called by FileManager after a batch (like an import) was appended to the journal,
+     * firstSequence is the sequence number of the first transaction, the rest follow it
+     * the batch is queued as a whole and merged in one go, see mergeQueued()
+     */
+    static void recordAppends(List<Transaction> transactions, long firstSequence) {
+        synchronized (queueLock) {
+            long sequence = firstSequence;
+            for (Transaction transaction : transactions) {
+                queued.add(new QueuedAppend(transaction, sequence++));
+            }
+        }
+        if (background == null && memory.getReadHoldCount() == 0 && memory.writeLock().tryLock()) {
+            try {
+                mergeQueued();
+            } finally {
+                memory.writeLock().unlock();
+            }
+        }
+    }
+
+    // brings the in-memory ledger up to date before somebody reads it: loads or reloads it
+    // if needed and merges the queued appends
+    // a thread that is already reading is left alone (a read lock can't become a write lock,
+    // so it keeps seeing what it saw until it lets go)
+    private static void refresh() {
+        awaitBackgroundLoad();
+        if (memory.getReadHoldCount() > 0 || (!needsReload() && !hasQueued())) {
+            return;
+        }
+        memory.writeLock().lock();
+        try {
+            if (needsReload()) {
+                reload();
+            }
+            mergeQueued();
+        } finally {
+            memory.writeLock().unlock();
+        }
+    }
+
+    private static synchronized boolean needsReload() {
+        return !loaded || isFileChanged();
+    }
+
+    private static boolean hasQueued() {
+        synchronized (queueLock) {
+            return !queued.isEmpty();
+        }
+    }
+
+    // adds the queued appends to the store and the indexes, only with the write lock held
+    // the date index gets them all at once, so a big import is one merge instead of one
+    // insert per row (see DateIndex.addAll)
+    private static void mergeQueued() {
+        List<QueuedAppend> appends;
+        synchronized (queueLock) {
+            if (queued.isEmpty()) {
+                return;
+            }
+            appends = new ArrayList<>(queued);
+            queued.clear();
+        }
+        long through;
+        synchronized (LedgerRepository.class) {
+            if (!loaded) {
+                return; // nothing cached yet, the next read loads everything anyway
+            }
+            through = loadedThrough;
+        }
+        int[] rows = new int[appends.size()];
+        int count = 0;
+        for (QueuedAppend append : appends) {
+            if (append.sequence <= through) {
+                continue; // compacted into the file before we read it, so it is already there
+            }
+            int row = store.add(append.transaction);
+            rollup.add(store, row);
+            if (searchIndex != null) {
+                searchIndex.add(row);
+            }
+            rows[count++] = row;
+        }
+        if (count == 1) {
+            dateIndex.add(rows[0]);
+        } else {
+            dateIndex.addAll(Arrays.copyOf(rows, count));
+        }
+    }
+
+    /**
+     * called by FileManager after our own journal was moved into the CSV file
+     * those rows are already in memory, we only need to accept the new file stamp
+     * the stamps are from just before and just after compacting, if the one before doesn't
+     * match what we know, someone else changed the file too and we reload next time
+     */
+    static synchronized void recordCompaction(long sizeBefore, long modifiedBefore,
+                                              long sizeAfter, long modifiedAfter) {
+        if (!loaded) {
+            return;
+        }
+        if (sizeBefore != knownSize || modifiedBefore != knownModified) {
+            loaded = false;
+            return;
+        }
+        knownSize = sizeAfter;
+        knownModified = modifiedAfter;
+    }
+
+    /**
+     * called by FileManager after the whole file was rewritten, size and modified are its new stamp
+     */
+    static void recordRewrite(List<Transaction> allTransactions, long size, long modified) {
+        if (memory.getReadHoldCount() > 0) {
+            invalidate(); // this thread is reading, the swap waits for the next refresh
+            return;
+        }
+        memory.writeLock().lock();
+        try {
+            synchronized (LedgerRepository.class) {
+                store = TransactionStore.of(allTransactions);
+                buildIndexes();
+                loaded = true;
+                knownSize = size;
+                knownModified = modified;
+            }
+        } finally {
+            memory.writeLock().unlock();
+        }
+    }
+
+    /**
+     * size and last modified time of the file the in-memory ledger was loaded from,
+     * null if nothing is loaded
+     */
+    static synchronized long[] knownFileStamp() {
+        return loaded ? new long[] {knownSize, knownModified} : null;
+    }
+
+    /**
+     * forgets the cached ledger so the next read goes back to the file
+     */
+    public static synchronized void invalidate() {
+        loaded = false;
+        generation++;
+    }
+
+    // loads everything from the file again, only with the write lock held
+    private static void reload() {
+        Loaded result = read();
+        synchronized (LedgerRepository.class) {
+            takeOver(result);
+        }
+    }
+
+    // reads the file and builds the indexes, without touching what is in memory now
+    // (the background loader runs this without holding the lock)
+    private static Loaded read() {
+        Metrics.Timer timer = Metrics.start("load");
+        long through = FileManager.recoverJournal();
+        Loaded result = new Loaded();
+        result.through = through;
+        // the stamp is taken under the same lock as the read, so it belongs to what we read
+        LedgerLock lock = LedgerLock.readLedger();
+        try {
+            result.store = FileManager.readLedger();
+            File file = FileManager.getLedgerFile();
+            result.size = file.length();
+            result.modified = file.lastModified();
+        } finally {
+            lock.unlock();
+        }
+        result.dateIndex = new DateIndex(result.store);
+        result.rollup = new PeriodRollup(result.store);
+        timer.stop();
+        Metrics.count("load.rows", result.store.size());
+        return result;
+    }
+
+    private static void takeOver(Loaded result) {
+        store = result.store;
+        dateIndex = result.dateIndex;
+        rollup = result.rollup;
+        searchIndex = null; // only rebuilt when somebody searches again
+        knownSize = result.size;
+        knownModified = result.modified;
+        loadedThrough = result.through;
+        loaded = true;
+    }
+
+    // hands the background load over and merges what was appended meanwhile
+    private static void install(Loaded result, int startGeneration) {
+        memory.writeLock().lock();
+        try {
+            synchronized (LedgerRepository.class) {
+                if (startGeneration == generation) {
+                    takeOver(result);
+                }
+            }
+            mergeQueued();
+        } finally {
+            memory.writeLock().unlock();
+        }
+    }
+
+    // builds the date index and the monthly totals for a freshly loaded store
+    // (the search index is only rebuilt when somebody searches again)
+    private static void buildIndexes() {
+        dateIndex = new DateIndex(store);
+        rollup = new PeriodRollup(store);
+        searchIndex = null;
+    }
+
+    // checks if the file size or modified time changed since we last synced
+    private static boolean isFileChanged() {
+        File file = FileManager.getLedgerFile();
+        return file.length() != knownSize || file.lastModified() != knownModified;
+    }
+
+    // puts System.out back and prints what the background loader said, once
+    private static void showHeldOutput() {
+        HeldOutput held;
+        synchronized (queueLock) {
+            if (background != null || heldOutput == null) {
+                return;
+            }
+            held = heldOutput;
+            heldOutput = null;
+        }
+        held.release();
+    }
+
+    // everything the background load produced
+    private static class Loaded {
+        TransactionStore store;
+        DateIndex dateIndex;
+        PeriodRollup rollup;
+        long size;
+        long modified;
+        long through;
+    }
+
+    // a transaction appended while the background load was running
+    private static class QueuedAppend {
+        final Transaction transaction;
+        final long sequence;
+
+        QueuedAppend(Transaction transaction, long sequence) {
+            this.transaction = transaction;
+            this.sequence = sequence;
+        }
+    }
+
+    // stands in for System.out while loading in the background: the loader thread's output is
+    // kept, everybody else's goes straight through
+    private static class HeldOutput extends OutputStream {
+        final PrintStream target;
+        final Thread loader;
+        final ByteArrayOutputStream held = new ByteArrayOutputStream();
+        final PrintStream stream;
+
+        HeldOutput(PrintStream target, Thread loader) {
+            this.target = target;
+            this.loader = loader;
+            this.stream = new PrintStream(this, true, target.charset());
+        }
+
+        @Override
+        public void write(int b) {
+            if (Thread.currentThread() == loader) {
+                synchronized (held) {
+                    held.write(b);
+                }
+            } else {
+                target.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            if (Thread.currentThread() == loader) {
+                synchronized (held) {
+                    held.write(bytes, offset, length);
+                }
+            } else {
+                target.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            target.flush();
+        }
+
+        // puts the real System.out back (unless someone replaced it since) and prints what was kept
+        void release() {
+            if (System.out == stream) {
+                System.setOut(target);
+            }
+            synchronized (held) {
+                try {
+                    held.writeTo(target);
+                } catch (IOException e) {
+                    // a PrintStream doesn't throw, it only sets its error flag
+                }
+            }
+            target.flush();
+        }
+    }
+}
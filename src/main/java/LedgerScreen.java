@@ -1,7 +1,6 @@
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.function.IntPredicate;
 
 /**
  * LedgerScreen handles displaying transactions in different views
@@ -68,17 +67,29 @@ public class LedgerScreen {
      * displays all transactions, sorted by newest first
      */
     private void displayAllTransactions() {
-        // load all transactions from file
-        List<Transaction> transactions = FileManager.readTransactions();
-
-        // sort by date and time, newest first (requirement!)
-        sortTransactionsNewestFirst(transactions);
+        // gets all transactions from the in-memory ledger
+        // the date index gives them sorted by date and time, newest first (requirement!)
+        // the rows are copied out while the ledger is read locked: an append moves rows around
+        // inside the index, so a range of it is only good until the lock is given back
+        TransactionStore store;
+        int[] rows;
+        PeriodTotals totals;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+            rows = index.all().toArray();
+            // the all-time totals are kept up to date by the rollup, no need to add them up again
+            totals = LedgerRepository.getRollup().allTime();
+        } finally {
+            reading.unlock();
+        }
 
-        // display the transactions
-        DisplayHelper.displayTransactions(transactions, "ALL TRANSACTIONS");
+        // display the transactions, one page at a time
+        LedgerPager.of(scanner, store, rows, "ALL TRANSACTIONS").show();
 
         // show statistics (bonus feature!)
-        DisplayHelper.displayStatistics(transactions);
+        DisplayHelper.displayStatistics(totals);
 
         // asks if user wants to export
         System.out.print("\n  Export these transactions to a file? (Y/N): ");
@@ -89,8 +100,9 @@ public class LedgerScreen {
             String filename = scanner.nextLine().trim();
 
             if (!filename.isEmpty()) {
-                FileManager.exportTransactions(transactions, filename);
-                DisplayHelper.showSuccessMessage("Transactions exported to " + filename);
+                if (export(store, rows, filename) >= 0) {
+                    DisplayHelper.showSuccessMessage("Transactions exported to " + filename);
+                }
             }
         }
         DisplayHelper.pressEnterToContinue();
@@ -100,31 +112,34 @@ public class LedgerScreen {
      * displays only deposit transactions
      */
     private void displayDeposits() {
-        // load all transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-
-        // filters to only deposits (positive amounts)
-        List<Transaction> deposits = new ArrayList<>();
-        for (Transaction t : allTransactions) {
-            if (t.isDeposit()) {
-                deposits.add(t);
+        // gets all transactions from the in-memory ledger, newest first
+        TransactionStore store;
+        int[] depositRows;
+        long depositCents = 0;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+
+            // filters to only deposits (positive amounts)
+            // walking the date index keeps them newest first, so no sorting needed
+            depositRows = selectNewestFirst(index, store::isDeposit);
+
+            // calculate deposit statistics (in cents, straight from the store)
+            for (int row : depositRows) {
+                depositCents += store.getAmountCents(row);
             }
+        } finally {
+            reading.unlock();
         }
 
-        // sort newest first
-        sortTransactionsNewestFirst(deposits);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, depositRows, "DEPOSITS ONLY - INCOMING EDDIES").show();
 
-        // display
-        DisplayHelper.displayTransactions(deposits, "DEPOSITS ONLY - INCOMING EDDIES");
-
-        // calculate deposit statistics
-        double totalDeposits = 0;
-        for (Transaction t : deposits) {
-            totalDeposits += t.getAmount();
-        }
-
-        System.out.println("\n  Total Deposits: $" + String.format("%,.2f", totalDeposits));
-        System.out.println("  Number of Deposits: " + deposits.size());
+        new RenderBuffer(128)
+                .line("\n  Total Deposits: $" + Money.formatWithCommas(depositCents))
+                .line("  Number of Deposits: " + depositRows.length)
+                .print();
 
         // export option
         System.out.print("\n  Export deposits to a file? (Y/N): ");
@@ -135,8 +150,9 @@ public class LedgerScreen {
             String filename = scanner.nextLine().trim();
 
             if (!filename.isEmpty()) {
-                FileManager.exportTransactions(deposits, filename);
-                DisplayHelper.showSuccessMessage("Deposits exported to " + filename);
+                if (export(store, depositRows, filename) >= 0) {
+                    DisplayHelper.showSuccessMessage("Deposits exported to " + filename);
+                }
             }
         }
         DisplayHelper.pressEnterToContinue();
@@ -146,33 +162,43 @@ public class LedgerScreen {
      * displays only payment transactions
      */
     private void displayPayments() {
-        // loads all transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-
-        // filters to only payments (negative amounts)
-        List<Transaction> payments = new ArrayList<>();
-        for (Transaction t : allTransactions) {
-            if (t.isPayment()) {
-                payments.add(t);
+        // gets all transactions from the in-memory ledger, newest first
+        TransactionStore store;
+        int[] paymentRows;
+        long paymentCents = 0;
+        QuantileSketch amounts = new QuantileSketch();
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+
+            // filters to only payments (negative amounts)
+            // walking the date index keeps them newest first, so no sorting needed
+            paymentRows = selectNewestFirst(index, store::isPayment);
+
+            // calculate payment statistics (in cents, straight from the store)
+            // the sketch gives the median without sorting the amounts (see QuantileSketch)
+            for (int row : paymentRows) {
+                long cents = Math.abs(store.getAmountCents(row));  // use absolute value for display
+                paymentCents += cents;
+                amounts.add(cents);
             }
+        } finally {
+            reading.unlock();
         }
 
-        // sort newest first
-        sortTransactionsNewestFirst(payments);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, paymentRows, "PAYMENTS ONLY - OUTGOING EDDIES").show();
 
-        // display
-        DisplayHelper.displayTransactions(payments, "PAYMENTS ONLY - OUTGOING EDDIES");
-
-        // calculate payment statistics
-        double totalPayments = 0;
-        for (Transaction t : payments) {
-            totalPayments += Math.abs(t.getAmount());  // use absolute value for display
+        RenderBuffer stats = new RenderBuffer(256)
+                .line("\n  Total Payments: $" + Money.formatWithCommas(paymentCents))
+                .line("  Number of Payments: " + paymentRows.length);
+        if (paymentRows.length > 0) {
+            stats.line("  Average Payment: $"
+                    + Money.formatWithCommas(LedgerAnalytics.average(paymentCents, paymentRows.length)))
+                    .line("  Median Payment: ~$" + Money.formatWithCommas(amounts.quantile(0.50)));
         }
-
-        System.out.println("\n  Total Payments: $" + String.format("%,.2f", totalPayments));
-        System.out.println("  Number of Payments: " + payments.size());
-
-        // TODO: Maybe add "average payment amount" calculation here
+        stats.print();
 
         // export option
         System.out.print("\n  Export payments to a file? (Y/N): ");
@@ -183,37 +209,37 @@ public class LedgerScreen {
             String filename = scanner.nextLine().trim();
 
             if (!filename.isEmpty()) {
-                FileManager.exportTransactions(payments, filename);
-                DisplayHelper.showSuccessMessage("Payments exported to " + filename);
+                if (export(store, paymentRows, filename) >= 0) {
+                    DisplayHelper.showSuccessMessage("Payments exported to " + filename);
+                }
             }
         }
         DisplayHelper.pressEnterToContinue();
     }
 
+    // writes the rows to the file, the ledger stays read locked while they are read
+    private static long export(TransactionStore store, int[] rows, String filename) {
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            return FileManager.exportTransactions(store.stream(rows), filename);
+        } finally {
+            reading.unlock();
+        }
+    }
+
     /**
-     * sorts transactions by date and time, newest first
-     * this is a requirement from the project pdf
+     * picks the rows that match the filter, going through the date index newest first
      */
-    private void sortTransactionsNewestFirst(List<Transaction> transactions) {
-        transactions.sort(new Comparator<Transaction>() {
-            @Override
-            public int compare(Transaction t1, Transaction t2) {
-                // first compare by date
-                int dateComparison = t2.getDate().compareTo(t1.getDate());
-
-                if (dateComparison != 0) {
-                    return dateComparison;  // different dates, return date comparison
-                }
-
-                // same date, compare by time
-                return t2.getTime().compareTo(t1.getTime());
+    private int[] selectNewestFirst(DateIndex index, IntPredicate filter) {
+        DateIndex.Range all = index.all();
+        int[] matches = new int[all.size()];
+        int count = 0;
+        for (int i = 0; i < all.size(); i++) {
+            int row = all.get(i);
+            if (filter.test(row)) {
+                matches[count++] = row;
             }
-        });
-
-        // Alternative shorter syntax (if you want to show you know lambda expressions):
-        // transactions.sort((t1, t2) -> {
-        //     int dateComp = t2.getDate().compareTo(t1.getDate());
-        //     return dateComp != 0 ? dateComp : t2.getTime().compareTo(t1.getTime());
-        // });
+        }
+        return Arrays.copyOf(matches, count);
     }
 }
@@ -0,0 +1,396 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * LedgerSnapshot saves the in-memory columns next to transactions.csv (transactions.snapshot)
+ * so the next start maps that file and copies the arrays in one go instead of parsing text
+ *
+ * transactions.csv stays the source of truth, the snapshot remembers how big the CSV file
+ * was, when it was last modified and a CRC of all of it:
+ *  - CSV unchanged (same size and modified time): the snapshot is all we need
+ *  - CSV only grew (journal compactions do that): the CRC of the old part still matches,
+ *    so snapshot + parse just the new part
+ *  - anything else: the snapshot is ignored, the CSV is parsed and a new snapshot written
+ * reading the file for the CRC is a lot cheaper than parsing it, and it only happens when
+ * the modified time changed
+ *
+ * layout (little endian):
+ *   header  magic "NCMSNAP1", version, csv size, csv modified time (nanoseconds), csv line count,
+ *           csv crc, last csv byte,
+ *           row count, description count, vendor count
+ *   columns epoch days (int), seconds of day (int), cents (long), description ids (int), vendor ids (int)
+ *   strings every description then every vendor, as byte length (int) + UTF-8 bytes
+ *
+ * corrupted lines in the part that came from the snapshot were reported when it was written,
+ * they are not reported again
+ */
+public class LedgerSnapshot {
+    private static final String SNAPSHOT_NAME = "transactions.snapshot";
+    private static final long MAGIC = 0x3150414E534D434EL; // "NCMSNAP1" read as a little endian long
+    private static final int VERSION = 2; // 1 had a checksum of sampled pieces and no modified time
+    private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 8 + 8 + 1 + 4 + 4 + 4;
+
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 20;
+
+    // the snapshot is mapped at most this much at a time (one mapping can't reach 2 GB),
+    // so big ledgers (~90M rows make a snapshot over 2 GB) still load from it
+    private static final long MAP_PIECE = 1L << 30;
+
+    // if more than 1/8 of the CSV file had to be parsed after the snapshot, a new one is written
+    private static final int REWRITE_FRACTION = 8;
+
+    /**
+     * loads the ledger, from the snapshot when it is still good, otherwise from the CSV file
+     */
+    public static TransactionStore load(Path csvPath) throws IOException {
+        long csvSize = Files.size(csvPath);
+        Header header = readHeader(csvPath, csvSize);
+        if (header != null) {
+            try {
+                TransactionStore store = readColumns(header);
+                long lines = header.csvLines;
+                if (csvSize > header.csvSize) {
+                    lines = loadTail(csvPath, header, store);
+                    if (csvSize - header.csvSize > csvSize / REWRITE_FRACTION) {
+                        write(csvPath, store, csvSize, lines);
+                    }
+                }
+                return store;
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Note: Could not use " + SNAPSHOT_NAME + " (" + e.getMessage()
+                        + "), reading the CSV file instead.");
+            }
+        }
+
+        TransactionStore store = new TransactionStore();
+        long lines = LedgerLoader.loadInto(csvPath, 0, 0, store);
+        write(csvPath, store, csvSize, lines);
+        return store;
+    }
+
+    /**
+     * deletes the snapshot, used when the CSV file is rewritten
+     */
+    public static void delete() {
+        try {
+            Files.deleteIfExists(snapshotPath());
+        } catch (IOException e) {
+            // a stale snapshot is noticed by its checksum anyway
+            System.out.println("Note: Could not delete " + SNAPSHOT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    // parses what was appended to the CSV after the snapshot was written, returns the new line count
+    private static long loadTail(Path csvPath, Header header, TransactionStore store) throws IOException {
+        long linesBefore = header.csvLines;
+        boolean splitLineBreak = header.lastByte == '\r' && header.nextByte == '\n'; // \r\n cut in half
+        boolean unfinishedLine = header.lastByte != '\n' && header.lastByte != '\r';
+        if (splitLineBreak || unfinishedLine) {
+            // the first line break of the new part only ends a line that was already counted
+            linesBefore--;
+        }
+        return linesBefore + LedgerLoader.loadInto(csvPath, header.csvSize, linesBefore, store);
+    }
+
+    /**
+     * writes the snapshot for a CSV file of csvSize bytes, through a temp file so a crash
+     * never leaves half a snapshot behind (failing to write it is not a problem, just slower next time)
+     */
+    static void write(Path csvPath, TransactionStore store, long csvSize, long csvLines) {
+        Path snapshotPath = snapshotPath();
+        // every copy of the app has its own temp file, two of them may write the snapshot at once
+        Path tempPath = Path.of(snapshotPath + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            byte lastByte;
+            long checksum;
+            long modified = modifiedNanos(csvPath);
+            try (FileChannel csv = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+                lastByte = csvSize == 0 ? (byte) '\n' : read(csv, csvSize - 1, 1)[0];
+                checksum = checksum(csv, csvSize);
+            }
+            try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                int rows = store.size();
+                StringDictionary descriptions = store.getDescriptions();
+                StringDictionary vendors = store.getVendors();
+
+                buffer.putLong(MAGIC).putInt(VERSION).putLong(csvSize).putLong(modified).putLong(csvLines)
+                        .putLong(checksum)
+                        .put(lastByte).putInt(rows).putInt(descriptions.size()).putInt(vendors.size());
+                for (int row = 0; row < rows; row++) {
+                    ensureRoom(out, buffer, 4);
+                    buffer.putInt(store.getEpochDay(row));
+                }
+                for (int row = 0; row < rows; row++) {
+                    ensureRoom(out, buffer, 4);
+                    buffer.putInt(store.getSecondOfDay(row));
+                }
+                for (int row = 0; row < rows; row++) {
+                    ensureRoom(out, buffer, 8);
+                    buffer.putLong(store.getAmountCents(row));
+                }
+                for (int row = 0; row < rows; row++) {
+                    ensureRoom(out, buffer, 4);
+                    buffer.putInt(store.getDescriptionId(row));
+                }
+                for (int row = 0; row < rows; row++) {
+                    ensureRoom(out, buffer, 4);
+                    buffer.putInt(store.getVendorId(row));
+                }
+                writeStrings(out, buffer, descriptions);
+                writeStrings(out, buffer, vendors);
+                flush(out, buffer);
+                out.force(true);
+            }
+            try {
+                Files.move(tempPath, snapshotPath,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.out.println("Note: Could not write " + SNAPSHOT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    // returns the header if the snapshot exists and still matches the CSV file, otherwise null
+    private static Header readHeader(Path csvPath, long csvSize) throws IOException {
+        Path snapshotPath = snapshotPath();
+        if (!Files.exists(snapshotPath) || Files.size(snapshotPath) < HEADER_SIZE) {
+            return null;
+        }
+        Header header = new Header();
+        try (FileChannel snapshot = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.wrap(read(snapshot, 0, HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            if (bytes.getLong() != MAGIC || bytes.getInt() != VERSION) {
+                return null;
+            }
+            header.csvSize = bytes.getLong();
+            header.csvModified = bytes.getLong();
+            header.csvLines = bytes.getLong();
+            header.checksum = bytes.getLong();
+            header.lastByte = bytes.get();
+            header.rows = bytes.getInt();
+            header.descriptionCount = bytes.getInt();
+            header.vendorCount = bytes.getInt();
+        }
+        if (csvSize < header.csvSize) {
+            return null; // the CSV file got smaller, it was rewritten
+        }
+        if (csvSize == header.csvSize && modifiedNanos(csvPath) == header.csvModified) {
+            return header; // nobody touched the file since the snapshot was written
+        }
+        try (FileChannel csv = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            if (checksum(csv, header.csvSize) != header.checksum) {
+                return null; // the old part of the file changed
+            }
+            if (csvSize > header.csvSize) {
+                header.nextByte = read(csv, header.csvSize, 1)[0];
+                boolean unfinishedLine = header.lastByte != '\n' && header.lastByte != '\r';
+                if (unfinishedLine && header.nextByte != '\n' && header.nextByte != '\r') {
+                    return null; // the new part has to start a new line, otherwise our last line was changed
+                }
+            }
+        }
+        return header;
+    }
+
+    // maps the snapshot a piece at a time and copies the columns out with bulk gets
+    private static TransactionStore readColumns(Header header) throws IOException {
+        long startNanos = System.nanoTime();
+        try (FileChannel snapshot = FileChannel.open(snapshotPath(), StandardOpenOption.READ)) {
+            long size = snapshot.size();
+            int rows = header.rows;
+            if (rows < 0 || HEADER_SIZE + (long) rows * 24 > size) {
+                throw new IOException("snapshot is cut short");
+            }
+
+            // room for a few appends before the arrays have to grow
+            int capacity = rows + Math.max(16, rows >> 4);
+            int[] epochDays = new int[capacity];
+            int[] secondsOfDay = new int[capacity];
+            long[] amountCents = new long[capacity];
+            int[] descriptionIds = new int[capacity];
+            int[] vendorIds = new int[capacity];
+
+            long position = HEADER_SIZE;
+            readInts(snapshot, position, epochDays, rows);
+            position += rows * 4L;
+            readInts(snapshot, position, secondsOfDay, rows);
+            position += rows * 4L;
+            readLongs(snapshot, position, amountCents, rows);
+            position += rows * 8L;
+            readInts(snapshot, position, descriptionIds, rows);
+            position += rows * 4L;
+            readInts(snapshot, position, vendorIds, rows);
+            position += rows * 4L;
+
+            if (header.descriptionCount < 0 || header.vendorCount < 0) {
+                throw new IOException("bad dictionary size");
+            }
+            String[] descriptions = new String[header.descriptionCount];
+            String[] vendors = new String[header.vendorCount];
+            position = readStrings(snapshot, position, descriptions);
+            readStrings(snapshot, position, vendors);
+            TransactionStore store = TransactionStore.fromColumns(rows, epochDays, secondsOfDay, amountCents,
+                    descriptionIds, vendorIds, descriptions, vendors);
+
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            System.out.println("Loaded " + rows + " transactions from snapshot in " + elapsedMillis + " ms.");
+            return store;
+        }
+    }
+
+    private static void readInts(FileChannel snapshot, long offset, int[] column, int rows) throws IOException {
+        int done = 0;
+        while (done < rows) {
+            int count = (int) Math.min(rows - done, MAP_PIECE / 4);
+            mapPiece(snapshot, offset + done * 4L, count * 4L).asIntBuffer().get(column, done, count);
+            done += count;
+        }
+    }
+
+    private static void readLongs(FileChannel snapshot, long offset, long[] column, int rows) throws IOException {
+        int done = 0;
+        while (done < rows) {
+            int count = (int) Math.min(rows - done, MAP_PIECE / 8);
+            mapPiece(snapshot, offset + done * 8L, count * 8L).asLongBuffer().get(column, done, count);
+            done += count;
+        }
+    }
+
+    // reads the strings starting at offset and returns where they end
+    // a new piece is mapped whenever the next string doesn't fit in the current one
+    private static long readStrings(FileChannel snapshot, long offset, String[] values) throws IOException {
+        long size = snapshot.size();
+        long position = offset;
+        ByteBuffer piece = ByteBuffer.allocate(0);
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < values.length; i++) {
+            if (piece.remaining() < 4) {
+                piece = mapPiece(snapshot, position, Math.min(MAP_PIECE, size - position));
+            }
+            if (piece.remaining() < 4) {
+                throw new IOException("snapshot is cut short");
+            }
+            int length = piece.getInt();
+            position += 4;
+            if (length < 0 || length > size - position) {
+                throw new IOException("snapshot is cut short");
+            }
+            if (piece.remaining() < length) {
+                piece = mapPiece(snapshot, position, Math.min(Math.max(length, MAP_PIECE), size - position));
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            piece.get(scratch, 0, length);
+            values[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            position += length;
+        }
+        return position;
+    }
+
+    private static ByteBuffer mapPiece(FileChannel snapshot, long offset, long length) throws IOException {
+        return snapshot.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeStrings(FileChannel out, ByteBuffer buffer, StringDictionary dictionary)
+            throws IOException {
+        for (int id = 0; id < dictionary.size(); id++) {
+            byte[] bytes = dictionary.get(id).getBytes(StandardCharsets.UTF_8);
+            ensureRoom(out, buffer, 4);
+            buffer.putInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                flush(out, buffer);
+                ByteBuffer big = ByteBuffer.wrap(bytes);
+                while (big.hasRemaining()) {
+                    out.write(big);
+                }
+            } else {
+                ensureRoom(out, buffer, bytes.length);
+                buffer.put(bytes);
+            }
+        }
+    }
+
+    private static void ensureRoom(FileChannel out, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(out, buffer);
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * CRC of the first csvSize bytes of the CSV file, every one of them
+     * (sampling pieces of the file missed edits that kept the length and fell between the pieces)
+     */
+    private static long checksum(FileChannel csv, long csvSize) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        long position = 0;
+        while (position < csvSize) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), csvSize - position));
+            int read = csv.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+
+    private static long modifiedNanos(Path csvPath) throws IOException {
+        return Files.getLastModifiedTime(csvPath).to(TimeUnit.NANOSECONDS);
+    }
+
+    private static byte[] read(FileChannel file, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        return buffer.array();
+    }
+
+    private static Path snapshotPath() {
+        return new File(SNAPSHOT_NAME).toPath();
+    }
+
+    /**
+     * what the snapshot header says
+     */
+    private static class Header {
+        long csvSize;
+        long csvModified; // nanoseconds, as the file system reports it
+        long csvLines;
+        long checksum;
+        byte lastByte;
+        byte nextByte; // first byte after csvSize, if the file grew
+        int rows;
+        int descriptionCount;
+        int vendorCount;
+    }
+}
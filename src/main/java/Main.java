@@ -12,10 +12,20 @@ public class Main {
      * Main method - this is where Java starts executing
      */
     public static void main(String[] args) {
+        // with arguments (like "report ytd") the command runs without the menus and the
+        // program exits with its exit code, see CommandLine
+        if (args.length > 0) {
+            System.exit(CommandLine.run(args));
+        }
+
         // create Scanner for reading user input
         // using try with resources to ensure Scanner is closed properly
         try (Scanner scanner = new Scanner(System.in)) {
 
+            // the ledger loads on a virtual thread while the menus are already up,
+            // the screens only wait for it when they need the transactions
+            LedgerRepository.loadInBackground();
+
             // show the cool welcome screen
             DisplayHelper.showWelcomeScreen();
 
@@ -39,6 +49,9 @@ public class Main {
             e.printStackTrace();  // print full error for debugging
         }
 
+        // moves whatever is still in the journal into transactions.csv and makes a last backup
+        FileManager.close();
+
         System.out.println("\n  Program terminated. Goodbye, choom!\n");
     }
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Metrics counts and times what the app does (loading, appends, backups, reports, searches,
+ * drawing the screens), so we can see where the time goes without attaching a profiler
+ *
+ *   Metrics.Timer timer = Metrics.start("backup");
+ *   ... the work ...
+ *   timer.stop();
+ *
+ *   Metrics.count("parse.corrupt", corruptedLines);
+ *
+ * counters are LongAdders and every timed operation gets a histogram with one bucket per
+ * power of two nanoseconds, so recording from many threads at once is cheap and never locks
+ * the percentiles are read from the buckets, so they are only exact to within a factor of two
+ *
+ * the numbers are shown with Reports > Metrics, or the metrics command (see CommandLine)
+ * with -Dncm.jfr=true every Timer is also a JFR event (ncm.Operation), so it shows up in a
+ * flight recording next to the GC and I/O events (times passed to record() are not)
+ */
+public class Metrics {
+    private static final boolean JFR = Boolean.getBoolean("ncm.jfr");
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+
+    /**
+     * one running measurement, stop() records it
+     */
+    public static class Timer {
+        private final String name;
+        private final long startNanos;
+        private final OperationEvent event;
+
+        private Timer(String name) {
+            this.name = name;
+            this.event = JFR ? new OperationEvent(name) : null;
+            if (event != null) {
+                event.begin();
+            }
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * records the time since start() and returns it in nanoseconds
+         */
+        public long stop() {
+            long nanos = System.nanoTime() - startNanos;
+            record(name, nanos);
+            if (event != null) {
+                event.commit();
+            }
+            return nanos;
+        }
+    }
+
+    @Name("ncm.Operation")
+    @Label("Night City Manager Operation")
+    @Category("Night City Manager")
+    @Description("A timed operation, like loading the ledger or running a report")
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        OperationEvent(String operation) {
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * starts timing an operation
+     */
+    public static Timer start(String name) {
+        return new Timer(name);
+    }
+
+    /**
+     * records an operation that took the given time
+     */
+    public static void record(String name, long nanos) {
+        timers.computeIfAbsent(name, key -> new Histogram()).add(nanos);
+    }
+
+    public static void count(String name) {
+        count(name, 1);
+    }
+
+    public static void count(String name, long amount) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * current value of a counter, 0 if nothing was counted yet
+     */
+    public static long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * forgets everything counted so far
+     */
+    public static void reset() {
+        counters.clear();
+        timers.clear();
+    }
+
+    /**
+     * adds the table of timings and the counters, sorted by name
+     * the percentiles are upper bounds (the end of the bucket they fall in)
+     */
+    public static void appendReport(RenderBuffer frame) {
+        if (timers.isEmpty() && counters.isEmpty()) {
+            frame.line("  Nothing measured yet.");
+            return;
+        }
+        if (!timers.isEmpty()) {
+            frame.line(String.format("  %-20s %9s %10s %10s %10s %10s %10s",
+                    "OPERATION", "COUNT", "AVG ms", "p50 ms", "p90 ms", "p99 ms", "MAX ms"));
+            for (Map.Entry<String, Histogram> entry : new TreeMap<>(timers).entrySet()) {
+                Histogram histogram = entry.getValue();
+                long count = histogram.count.sum();
+                if (count == 0) {
+                    continue;
+                }
+                frame.line(String.format("  %-20s %,9d %10.3f %10.3f %10.3f %10.3f %10.3f",
+                        entry.getKey(), count,
+                        millis(histogram.totalNanos.sum() / (double) count),
+                        millis(histogram.percentile(0.50)),
+                        millis(histogram.percentile(0.90)),
+                        millis(histogram.percentile(0.99)),
+                        millis(histogram.maxNanos.get())));
+            }
+        }
+        if (!counters.isEmpty()) {
+            frame.line();
+            frame.line(String.format("  %-20s %15s", "COUNTER", "VALUE"));
+            for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+                frame.line(String.format("  %-20s %,15d", entry.getKey(), entry.getValue().sum()));
+            }
+        }
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    // bucket i holds the times from 2^i to 2^(i+1) - 1 nanoseconds
+    private static class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void add(long nanos) {
+            nanos = Math.max(1, nanos);
+            buckets[63 - Long.numberOfLeadingZeros(nanos)].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        // the end of the bucket the given share of the times falls in (never more than the max)
+        long percentile(double share) {
+            long total = count.sum();
+            long rank = Math.max(1, (long) Math.ceil(total * share));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    long bucketEnd = i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                    return Math.min(bucketEnd, maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Money has the helpers for amounts stored as a whole number of cents (long)
+ * doubles can't hold most decimal amounts exactly, so sums drift and comparing
+ * two amounts needed a tolerance, with cents adding is exact and == just works
+ *
+ * anything with more than 2 decimals is rounded half up, same as the "%.2f" we write to the file
+ */
+public class Money {
+    // above this many cents we stop the fast path and let BigDecimal check for overflow
+    private static final long FAST_PATH_LIMIT = 100_000_000_000_000_000L;
+
+    /**
+     * parses an amount like "1500", "-850.00" or "+3.5" into cents
+     * throws NumberFormatException if it isn't a number
+     */
+    public static long parse(String text) {
+        byte[] bytes = text.trim().getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * parses the amount stored in bytes[start..end) into cents without making a String
+     * [+-]digits[.digits] is read directly, anything else (like 1e5) goes through BigDecimal
+     */
+    public static long parse(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long cents = 0;
+        int digitCount = 0;
+        int decimals = -1;
+        boolean roundUp = false;
+        boolean simple = true;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                digitCount++;
+                if (decimals < 2) {
+                    cents = cents * 10 + (b - '0');
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                    if (cents >= FAST_PATH_LIMIT) {
+                        simple = false;
+                        break;
+                    }
+                } else if (decimals == 2) {
+                    // third decimal decides the rounding, the rest doesn't matter
+                    roundUp = b >= '5';
+                    decimals++;
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+        if (!simple || digitCount == 0) {
+            return parseSlow(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+        // pads "12" or "12.5" out to whole cents
+        for (int missing = Math.max(decimals, 0); missing < 2; missing++) {
+            cents *= 10;
+        }
+        if (roundUp) {
+            cents++;
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * turns a double amount into cents (rounded to the nearest cent)
+     */
+    public static long fromDouble(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * turns cents back into a double, only use this for things like averages and charts
+     */
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * formats cents as a plain amount like "-850.00" (what we write to the CSV file)
+     */
+    public static String format(long cents) {
+        StringBuilder text = new StringBuilder(24);
+        appendAmount(text, cents, false);
+        return text.toString();
+    }
+
+    /**
+     * formats cents with thousands separators like "1,234.56" (what we show on screen)
+     */
+    public static String formatWithCommas(long cents) {
+        StringBuilder text = new StringBuilder(28);
+        appendAmount(text, cents, true);
+        return text.toString();
+    }
+
+    /**
+     * appends the amount to a StringBuilder, with or without thousands separators
+     */
+    public static void appendAmount(StringBuilder text, long cents, boolean commas) {
+        if (cents < 0) {
+            text.append('-');
+        }
+        // works on the negative side so Long.MIN_VALUE doesn't overflow
+        long negativeCents = cents < 0 ? cents : -cents;
+        long whole = -(negativeCents / 100);
+        int fraction = (int) -(negativeCents % 100);
+
+        String digits = Long.toString(whole);
+        if (commas) {
+            int firstGroup = digits.length() % 3 == 0 ? 3 : digits.length() % 3;
+            text.append(digits, 0, firstGroup);
+            for (int i = firstGroup; i < digits.length(); i += 3) {
+                text.append(',').append(digits, i, i + 3);
+            }
+        } else {
+            text.append(digits);
+        }
+        text.append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        text.append(fraction);
+    }
+
+    // handles everything the fast path doesn't (exponents, huge values...)
+    private static long parseSlow(String text) {
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(text.trim());
+        } catch (NumberFormatException e) {
+            // still accepts anything Double.parseDouble did before we switched to cents
+            amount = BigDecimal.valueOf(Double.parseDouble(text));
+        }
+        try {
+            return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount is too large: " + text);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * PeriodRollup keeps deposit/payment totals for every month of the ledger
+ * it is updated as transactions are added, so the totals for a month, a year
+ * or any range of months are just a few bucket additions instead of a full scan
+ */
+public class PeriodRollup {
+    private final TreeMap<YearMonth, PeriodTotals> months = new TreeMap<>();
+    private final PeriodTotals allTime = new PeriodTotals();
+
+    /**
+     * builds the rollup from every row in the store
+     */
+    public PeriodRollup(TransactionStore store) {
+        for (int row = 0; row < store.size(); row++) {
+            addRow(store, row);
+        }
+    }
+
+    /**
+     * counts one row of the store into its month
+     */
+    public void add(TransactionStore store, int row) {
+        addRow(store, row);
+    }
+
+    // private so the constructor doesn't call a method a subclass could override
+    private void addRow(TransactionStore store, int row) {
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(store.getEpochDay(row)));
+        long cents = store.getAmountCents(row);
+        months.computeIfAbsent(month, key -> new PeriodTotals()).add(cents);
+        allTime.add(cents);
+    }
+
+    /**
+     * totals for the whole ledger
+     */
+    public PeriodTotals allTime() {
+        PeriodTotals copy = new PeriodTotals();
+        copy.add(allTime);
+        return copy;
+    }
+
+    /**
+     * totals for the months from first to last (both included)
+     */
+    public PeriodTotals months(YearMonth first, YearMonth last) {
+        PeriodTotals totals = new PeriodTotals();
+        if (first.isAfter(last)) {
+            return totals;
+        }
+        for (PeriodTotals month : months.subMap(first, true, last, true).values()) {
+            totals.add(month);
+        }
+        return totals;
+    }
+
+    /**
+     * totals from startDate to endDate (both included)
+     * whole months come from the buckets, a partly covered month at either end
+     * (like month to date) is added up from its rows in the date index
+     */
+    public PeriodTotals between(LocalDate startDate, LocalDate endDate, DateIndex index) {
+        PeriodTotals totals = new PeriodTotals();
+        if (startDate.isAfter(endDate)) {
+            return totals;
+        }
+        // a partly covered first month is counted row by row
+        LocalDate wholeStart = startDate;
+        if (startDate.getDayOfMonth() != 1) {
+            LocalDate partEnd = YearMonth.from(startDate).atEndOfMonth();
+            if (partEnd.isAfter(endDate)) {
+                partEnd = endDate;
+            }
+            addRows(totals, index, startDate, partEnd);
+            wholeStart = partEnd.plusDays(1);
+        }
+        if (wholeStart.isAfter(endDate)) {
+            return totals;
+        }
+
+        // same for a partly covered last month
+        LocalDate wholeEnd = endDate;
+        YearMonth lastMonth = YearMonth.from(endDate);
+        if (!endDate.equals(lastMonth.atEndOfMonth())) {
+            LocalDate partStart = lastMonth.atDay(1);
+            if (partStart.isBefore(wholeStart)) {
+                partStart = wholeStart;
+            }
+            addRows(totals, index, partStart, endDate);
+            wholeEnd = partStart.minusDays(1);
+        }
+
+        // everything left in the middle is whole months, straight from the buckets
+        if (!wholeStart.isAfter(wholeEnd)) {
+            totals.add(months(YearMonth.from(wholeStart), YearMonth.from(wholeEnd)));
+        }
+        return totals;
+    }
+
+    /**
+     * how many months have at least one transaction
+     */
+    public int monthCount() {
+        return months.size();
+    }
+
+    /**
+     * the monthly buckets, oldest first (read only use please)
+     */
+    public Map<YearMonth, PeriodTotals> byMonth() {
+        return months;
+    }
+
+    private static void addRows(PeriodTotals totals, DateIndex index, LocalDate from, LocalDate to) {
+        TransactionStore store = index.getStore();
+        DateIndex.Range range = index.between(from, to);
+        for (int i = 0; i < range.size(); i++) {
+            totals.add(store.getAmountCents(range.get(i)));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * PeriodTotals holds the deposit and payment sums and counts for some period
+ * amounts are in cents, payments are kept as a positive number
+ */
+public class PeriodTotals {
+    private long depositCents;
+    private int depositCount;
+    private long paymentCents;
+    private int paymentCount;
+
+    /**
+     * counts one transaction amount (anything that isn't a deposit counts as a payment,
+     * same as the statistics screen always did)
+     */
+    public void add(long amountCents) {
+        if (amountCents > 0) {
+            depositCents += amountCents;
+            depositCount++;
+        } else {
+            paymentCents -= amountCents;
+            paymentCount++;
+        }
+    }
+
+    /**
+     * adds the totals of another period to this one
+     */
+    public void add(PeriodTotals other) {
+        depositCents += other.depositCents;
+        depositCount += other.depositCount;
+        paymentCents += other.paymentCents;
+        paymentCount += other.paymentCount;
+    }
+
+    public long getDepositCents() {
+        return depositCents;
+    }
+    public int getDepositCount() {
+        return depositCount;
+    }
+    public long getPaymentCents() {
+        return paymentCents;
+    }
+    public int getPaymentCount() {
+        return paymentCount;
+    }
+    public int getCount() {
+        return depositCount + paymentCount;
+    }
+    public long getBalanceCents() {
+        return depositCents - paymentCents;
+    }
+}
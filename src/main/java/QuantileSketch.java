@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+/**
+ * QuantileSketch estimates percentiles (median, p90, p99, ...) of a stream of amounts
+ * without keeping the amounts themselves
+ *
+ * every value goes into a bucket, each bucket is about 2% wider than the one before it
+ * (the same idea as DDSketch), so the answer for any percentile is within 1% of an amount that
+ * really is at that rank, and the whole sketch is ~1300 counters for anything from 1 cent
+ * to a billion eddies, no matter if it saw ten values or a hundred million
+ *
+ * values are in cents and can't be negative (use the absolute amount for payments)
+ */
+public class QuantileSketch {
+    private static final double RELATIVE_ERROR = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ERROR) / (1 - RELATIVE_ERROR);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private long[] buckets = new long[256]; // bucket i holds values up to GAMMA^i, grows as needed
+    private long zeros;                     // values of 0 don't fit any bucket
+    private long count;
+
+    public void add(long cents) {
+        if (cents < 0) {
+            throw new IllegalArgumentException("QuantileSketch only takes amounts >= 0, got " + cents);
+        }
+        count++;
+        if (cents == 0) {
+            zeros++;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(cents) / LOG_GAMMA);
+        if (bucket >= buckets.length) {
+            buckets = Arrays.copyOf(buckets, Math.max(bucket + 1, buckets.length * 2));
+        }
+        buckets[bucket]++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * the amount at the given share of the values (0.5 is the median, 0.99 is p99), in cents
+     * 0 if nothing was added
+     */
+    public long quantile(double share) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.floor(Math.min(1, Math.max(0, share)) * (count - 1));
+        long seen = zeros;
+        if (rank < seen) {
+            return 0;
+        }
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if (rank < seen) {
+                // the middle of the bucket (in relative terms), that is what keeps the error at 1%
+                return Math.round(2 * Math.pow(GAMMA, bucket) / (GAMMA + 1));
+            }
+        }
+        return 0; // not reached, the buckets add up to count
+    }
+
+    /**
+     * adds everything the other sketch saw to this one
+     */
+    public void merge(QuantileSketch other) {
+        if (other.buckets.length > buckets.length) {
+            buckets = Arrays.copyOf(buckets, other.buckets.length);
+        }
+        for (int bucket = 0; bucket < other.buckets.length; bucket++) {
+            buckets[bucket] += other.buckets[bucket];
+        }
+        zeros += other.zeros;
+        count += other.count;
+    }
+}
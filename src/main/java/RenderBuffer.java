@@ -0,0 +1,89 @@
+import java.io.PrintStream;
+
+/**
+ * RenderBuffer collects a whole screen (or any block of lines) in memory
+ * and then prints it to the console with one write and one flush
+ *
+ * System.out flushes on every println, so a menu or a table printed line by line is
+ * one syscall per line, which is slow over a pipe or an SSH terminal, with this
+ * the same screen is a single write no matter how many lines it has
+ *
+ * usage: build the frame with append()/line(), then call print()
+ * (print() empties the buffer, so the same RenderBuffer can be used for the next frame)
+ */
+public class RenderBuffer {
+    private final StringBuilder text;
+
+    public RenderBuffer() {
+        this(1024);
+    }
+
+    public RenderBuffer(int capacity) {
+        this.text = new StringBuilder(capacity);
+    }
+
+    public RenderBuffer append(String value) {
+        text.append(value);
+        return this;
+    }
+
+    public RenderBuffer append(char value) {
+        text.append(value);
+        return this;
+    }
+
+    public RenderBuffer append(long value) {
+        text.append(value);
+        return this;
+    }
+
+    /**
+     * adds the value followed by a new line (like println)
+     */
+    public RenderBuffer line(String value) {
+        text.append(value).append('\n');
+        return this;
+    }
+
+    /**
+     * adds an empty line (like println())
+     */
+    public RenderBuffer line() {
+        text.append('\n');
+        return this;
+    }
+
+    /**
+     * the text so far, for the helpers that write into a StringBuilder (like TransactionFormat)
+     */
+    public StringBuilder text() {
+        return text;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * prints everything to System.out in one go
+     */
+    public void print() {
+        print(System.out);
+    }
+
+    /**
+     * prints everything to the given stream with a single write and flush, then empties the buffer
+     * the text is encoded with the stream's own charset, so it looks the same as println would
+     */
+    public void print(PrintStream out) {
+        Metrics.Timer timer = Metrics.start("render");
+        if (text.length() > 0) {
+            byte[] bytes = text.toString().getBytes(out.charset());
+            out.write(bytes, 0, bytes.length);
+            Metrics.count("render.bytes", bytes.length);
+        }
+        out.flush();
+        text.setLength(0);
+        timer.stop();
+    }
+}
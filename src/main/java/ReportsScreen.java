@@ -1,7 +1,5 @@
 import java.time.LocalDate;
 import java.time.YearMonth;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -35,7 +33,7 @@ public class ReportsScreen {
      */
     private void handleReportsChoice(String choice) {
         // validates input
-        if (!InputValidator.isValidNumericChoice(choice, 0, 6)) {
+        if (!InputValidator.isValidNumericChoice(choice, 0, 8)) {
             DisplayHelper.pressEnterToContinue();
             return;
         }
@@ -61,6 +59,13 @@ public class ReportsScreen {
             case 6:
                 customSearch();
                 break;
+            case 7:
+                DisplayHelper.showMetrics();
+                DisplayHelper.pressEnterToContinue();
+                break;
+            case 8:
+                showAnalytics();
+                break;
             case 0:
                 backToLedger = true;
                 break;
@@ -79,19 +84,30 @@ public class ReportsScreen {
 
         System.out.println("\n  Filtering from " + startOfMonth + " to " + today);
 
-        // load and filter transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-        List<Transaction> filtered = filterByDateRange(allTransactions, startOfMonth, today);
-
-        // sort newest first
-        sortTransactionsNewestFirst(filtered);
+        // finds the date range in the date index, the rows already come out newest first
+        Metrics.Timer timer = Metrics.start("report.mtd");
+        // read locked so rows appended meanwhile can't land halfway through (see LedgerRepository)
+        TransactionStore store;
+        int[] rows;
+        PeriodTotals totals;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+            rows = index.between(startOfMonth, today).toArray();
+            // totals come from the monthly rollups, only a partial month is added up row by row
+            totals = LedgerRepository.getRollup().between(startOfMonth, today, index);
+        } finally {
+            reading.unlock();
+        }
+        timer.stop();
 
-        // display
-        DisplayHelper.displayTransactions(filtered,
-                "MONTH TO DATE REPORT - " + today.getMonth() + " " + today.getYear());
-        DisplayHelper.displayStatistics(filtered);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, rows,
+                "MONTH TO DATE REPORT - " + today.getMonth() + " " + today.getYear()).show();
+        DisplayHelper.displayStatistics(totals);
 
-        offerExport(filtered, "month_to_date.csv");
+        offerExport(store, rows, "month_to_date.csv");
         DisplayHelper.pressEnterToContinue();
     }
 
@@ -108,19 +124,29 @@ public class ReportsScreen {
 
         System.out.println("\n  Filtering from " + startOfPrevMonth + " to " + endOfPrevMonth);
 
-        // load and filter transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-        List<Transaction> filtered = filterByDateRange(allTransactions, startOfPrevMonth, endOfPrevMonth);
-
-        // sort newest first
-        sortTransactionsNewestFirst(filtered);
+        // finds the date range in the date index, the rows already come out newest first
+        Metrics.Timer timer = Metrics.start("report.prev-month");
+        TransactionStore store;
+        int[] rows;
+        PeriodTotals totals;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+            rows = index.between(startOfPrevMonth, endOfPrevMonth).toArray();
+            // totals come from the monthly rollups, only a partial month is added up row by row
+            totals = LedgerRepository.getRollup().between(startOfPrevMonth, endOfPrevMonth, index);
+        } finally {
+            reading.unlock();
+        }
+        timer.stop();
 
-        // display
-        DisplayHelper.displayTransactions(filtered,
-                "PREVIOUS MONTH REPORT - " + previousMonth.getMonth() + " " + previousMonth.getYear());
-        DisplayHelper.displayStatistics(filtered);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, rows,
+                "PREVIOUS MONTH REPORT - " + previousMonth.getMonth() + " " + previousMonth.getYear()).show();
+        DisplayHelper.displayStatistics(totals);
 
-        offerExport(filtered, "previous_month.csv");
+        offerExport(store, rows, "previous_month.csv");
         DisplayHelper.pressEnterToContinue();
     }
 
@@ -133,19 +159,29 @@ public class ReportsScreen {
 
         System.out.println("\n  Filtering from " + startOfYear + " to " + today);
 
-        // load and filter transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-        List<Transaction> filtered = filterByDateRange(allTransactions, startOfYear, today);
-
-        // sort newest first
-        sortTransactionsNewestFirst(filtered);
+        // finds the date range in the date index, the rows already come out newest first
+        Metrics.Timer timer = Metrics.start("report.ytd");
+        TransactionStore store;
+        int[] rows;
+        PeriodTotals totals;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+            rows = index.between(startOfYear, today).toArray();
+            // totals come from the monthly rollups, only a partial month is added up row by row
+            totals = LedgerRepository.getRollup().between(startOfYear, today, index);
+        } finally {
+            reading.unlock();
+        }
+        timer.stop();
 
-        // display
-        DisplayHelper.displayTransactions(filtered,
-                "YEAR TO DATE REPORT - " + today.getYear());
-        DisplayHelper.displayStatistics(filtered);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, rows,
+                "YEAR TO DATE REPORT - " + today.getYear()).show();
+        DisplayHelper.displayStatistics(totals);
 
-        offerExport(filtered, "year_to_date.csv");
+        offerExport(store, rows, "year_to_date.csv");
         DisplayHelper.pressEnterToContinue();
     }
 
@@ -161,19 +197,29 @@ public class ReportsScreen {
 
         System.out.println("\n  Filtering from " + startOfPrevYear + " to " + endOfPrevYear);
 
-        // load and filter transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-        List<Transaction> filtered = filterByDateRange(allTransactions, startOfPrevYear, endOfPrevYear);
-
-        // sort newest first
-        sortTransactionsNewestFirst(filtered);
+        // finds the date range in the date index, the rows already come out newest first
+        Metrics.Timer timer = Metrics.start("report.prev-year");
+        TransactionStore store;
+        int[] rows;
+        PeriodTotals totals;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+            rows = index.between(startOfPrevYear, endOfPrevYear).toArray();
+            // totals come from the monthly rollups, only a partial month is added up row by row
+            totals = LedgerRepository.getRollup().between(startOfPrevYear, endOfPrevYear, index);
+        } finally {
+            reading.unlock();
+        }
+        timer.stop();
 
-        // display
-        DisplayHelper.displayTransactions(filtered,
-                "PREVIOUS YEAR REPORT - " + previousYear);
-        DisplayHelper.displayStatistics(filtered);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, rows,
+                "PREVIOUS YEAR REPORT - " + previousYear).show();
+        DisplayHelper.displayStatistics(totals);
 
-        offerExport(filtered, "previous_year.csv");
+        offerExport(store, rows, "previous_year.csv");
         DisplayHelper.pressEnterToContinue();
     }
 
@@ -181,9 +227,11 @@ public class ReportsScreen {
      * searches for all transactions with a specific vendor
      */
     private void searchByVendor() {
-        System.out.println("\n╔════════════════════════════════════════════════════════════╗");
-        System.out.println("║              SEARCH BY VENDOR - FIND TRANSACTIONS          ║");
-        System.out.println("╚════════════════════════════════════════════════════════════╝\n");
+        RenderBuffer frame = new RenderBuffer(1024);
+        frame.line("\n╔════════════════════════════════════════════════════════════╗");
+        frame.line("║              SEARCH BY VENDOR - FIND TRANSACTIONS          ║");
+        frame.line("╚════════════════════════════════════════════════════════════╝\n");
+        frame.print();
 
         System.out.print("  Enter vendor name to search for: ");
         String searchVendor = scanner.nextLine().trim();
@@ -194,29 +242,34 @@ public class ReportsScreen {
             return;
         }
 
-        // load all transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-
-        // filter by vendor (case-insensitive, partial match)
-        List<Transaction> filtered = new ArrayList<>();
-        for (Transaction t : allTransactions) {
-            // using toLowerCase() for case-insensitive search
-            // using contains() for partial match (so "Arasaka" matches "Arasaka Corp")
-            if (t.getVendor().toLowerCase().contains(searchVendor.toLowerCase())) {
-                filtered.add(t);
-            }
+        // get all transactions from the in-memory ledger
+        Metrics.Timer timer = Metrics.start("search.vendor");
+        TransactionStore store;
+        int[] rows;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            store = index.getStore();
+
+            // filter by vendor (case-insensitive, partial match)
+            // so "Arasaka" matches "Arasaka Corp", the search index only looks at the
+            // distinct vendor names and then jumps straight to the rows that use them
+            rows = LedgerRepository.getSearchIndex().rowsWithVendorContaining(searchVendor);
+
+            // sort newest first
+            index.sortNewestFirst(rows);
+        } finally {
+            reading.unlock();
         }
+        timer.stop();
 
-        // sort newest first
-        sortTransactionsNewestFirst(filtered);
-
-        // display
-        DisplayHelper.displayTransactions(filtered,
-                "VENDOR SEARCH RESULTS - \"" + searchVendor + "\"");
-        DisplayHelper.displayStatistics(filtered);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, rows,
+                "VENDOR SEARCH RESULTS - \"" + searchVendor + "\"").show();
+        showStatistics(store, rows);
 
-        if (!filtered.isEmpty()) {
-            offerExport(filtered, "vendor_" + searchVendor.replaceAll(" ", "_") + ".csv");
+        if (rows.length > 0) {
+            offerExport(store, rows, "vendor_" + searchVendor.replaceAll(" ", "_") + ".csv");
         }
 
         DisplayHelper.pressEnterToContinue();
@@ -227,10 +280,12 @@ public class ReportsScreen {
      * users can filter by any combination of: start date, end date, description, vendor, amount
      */
     private void customSearch() {
-        System.out.println("\n╔════════════════════════════════════════════════════════════╗");
-        System.out.println("║          CUSTOM SEARCH - ADVANCED FILTERING                  ║");
-        System.out.println("║  Leave any field empty to skip that filter                   ║");
-        System.out.println("╚════════════════════════════════════════════════════════════╝\n");
+        RenderBuffer frame = new RenderBuffer(1024);
+        frame.line("\n╔════════════════════════════════════════════════════════════╗");
+        frame.line("║          CUSTOM SEARCH - ADVANCED FILTERING                  ║");
+        frame.line("║  Leave any field empty to skip that filter                   ║");
+        frame.line("╚════════════════════════════════════════════════════════════╝\n");
+        frame.print();
 
         // Collect search criteria
         String startDateStr = null;
@@ -268,120 +323,68 @@ public class ReportsScreen {
             if (amountStr.isEmpty()) break;
         } while (!InputValidator.isValidSearchAmount(amountStr));
 
-        // show what we're searching for
-        System.out.println("\n  ─────────────────────────────────────────────────────────");
-        System.out.println("  SEARCH CRITERIA:");
-        if (!startDateStr.isEmpty()) System.out.println("  Start Date: " + startDateStr);
-        if (!endDateStr.isEmpty()) System.out.println("  End Date: " + endDateStr);
-        if (!descriptionFilter.isEmpty()) System.out.println("  Description: " + descriptionFilter);
-        if (!vendorFilter.isEmpty()) System.out.println("  Vendor: " + vendorFilter);
-        if (!amountStr.isEmpty()) System.out.println("  Amount: $" + amountStr);
-        System.out.println("  ─────────────────────────────────────────────────────────");
-
-        // load all transactions
-        List<Transaction> allTransactions = FileManager.readTransactions();
-        List<Transaction> filtered = new ArrayList<>();
-
-        // apply filters
-        for (Transaction t : allTransactions) {
-            boolean matches = true;
-
-            // check start date filter
-            if (!startDateStr.isEmpty()) {
-                LocalDate startDate = LocalDate.parse(startDateStr);
-                if (t.getDate().isBefore(startDate)) {
-                    matches = false;
-                }
-            }
-
-            // check end date filter
-            if (!endDateStr.isEmpty()) {
-                LocalDate endDate = LocalDate.parse(endDateStr);
-                if (t.getDate().isAfter(endDate)) {
-                    matches = false;
-                }
-            }
-
-            // check description filter (case-insensitive, partial match)
-            if (!descriptionFilter.isEmpty()) {
-                if (!t.getDescription().toLowerCase().contains(descriptionFilter.toLowerCase())) {
-                    matches = false;
-                }
-            }
-
-            // check vendor filter (case-insensitive, partial match)
-            if (!vendorFilter.isEmpty()) {
-                if (!t.getVendor().toLowerCase().contains(vendorFilter.toLowerCase())) {
-                    matches = false;
-                }
-            }
-
-            // check amount filter (exact match)
-            if (!amountStr.isEmpty()) {
-                double searchAmount = Double.parseDouble(amountStr);
-                // use a small tolerance for floating point comparison
-                if (Math.abs(t.getAmount() - searchAmount) > 0.001) {
-                    matches = false;
-                }
-            }
-
-            // if all filters passed, add to results
-            if (matches) {
-                filtered.add(t);
-            }
+        // show what we're searching for (print() emptied the frame, so it is reused)
+        frame.line("\n  ─────────────────────────────────────────────────────────");
+        frame.line("  SEARCH CRITERIA:");
+        if (!startDateStr.isEmpty()) frame.line("  Start Date: " + startDateStr);
+        if (!endDateStr.isEmpty()) frame.line("  End Date: " + endDateStr);
+        if (!descriptionFilter.isEmpty()) frame.line("  Description: " + descriptionFilter);
+        if (!vendorFilter.isEmpty()) frame.line("  Vendor: " + vendorFilter);
+        if (!amountStr.isEmpty()) frame.line("  Amount: $" + amountStr);
+        frame.line("  ─────────────────────────────────────────────────────────");
+        frame.print();
+
+        // the criteria are parsed and planned once (see CompiledQuery), then run over the ledger
+        SearchCriteria criteria = SearchCriteria.fromInput(
+                startDateStr, endDateStr, descriptionFilter, vendorFilter, amountStr);
+        TransactionStore store;
+        int[] rows;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            CompiledQuery query = CompiledQuery.compile(criteria);
+            store = query.getStore();
+            rows = query.run(); // already newest first
+        } finally {
+            reading.unlock();
         }
 
-        // sort newest first
-        sortTransactionsNewestFirst(filtered);
-
-        // display
-        DisplayHelper.displayTransactions(filtered, "CUSTOM SEARCH RESULTS");
-        DisplayHelper.displayStatistics(filtered);
+        // display, one page at a time
+        LedgerPager.of(scanner, store, rows,
+                "CUSTOM SEARCH RESULTS").show();
+        showStatistics(store, rows);
 
         // TODO: Could add option to save search criteria for later reuse
 
-        if (!filtered.isEmpty()) {
-            offerExport(filtered, "custom_search_results.csv");
+        if (rows.length > 0) {
+            offerExport(store, rows, "custom_search_results.csv");
         }
 
         DisplayHelper.pressEnterToContinue();
     }
 
     /**
-     * helper method: Filters transactions by date range (inclusive)
+     * top vendors and typical amounts over the whole ledger
+     * one pass over the rows, the amounts aren't kept or sorted (see LedgerAnalytics)
      */
-    private List<Transaction> filterByDateRange(List<Transaction> transactions,
-                                                LocalDate startDate,
-                                                LocalDate endDate) {
-        List<Transaction> filtered = new ArrayList<>();
-
-        for (Transaction t : transactions) {
-            // check if transaction date is within range (inclusive)
-            if ((t.getDate().isEqual(startDate) || t.getDate().isAfter(startDate)) &&
-                    (t.getDate().isEqual(endDate) || t.getDate().isBefore(endDate))) {
-                filtered.add(t);
-            }
+    private void showAnalytics() {
+        LedgerAnalytics analytics;
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DateIndex index = LedgerRepository.getDateIndex();
+            analytics = LedgerAnalytics.of(index.getStore(), index.all(), LedgerAnalytics.DEFAULT_TOP);
+        } finally {
+            reading.unlock();
         }
-
-        return filtered;
-    }
-
-    /**
-     * helper method: Sorts transactions newest first
-     * (same logic as in LedgerScreen - could be moved to a utility class)
-     */
-    private void sortTransactionsNewestFirst(List<Transaction> transactions) {
-        transactions.sort((t1, t2) -> {
-            int dateComp = t2.getDate().compareTo(t1.getDate());
-            return dateComp != 0 ? dateComp : t2.getTime().compareTo(t1.getTime());
-        });
+        DisplayHelper.showAnalytics(analytics);
+        DisplayHelper.pressEnterToContinue();
     }
 
     /**
      * helper method: Offers to export filtered results
+     * the rows are turned into transactions one at a time while writing (see FileManager)
      */
-    private void offerExport(List<Transaction> transactions, String suggestedFilename) {
-        if (transactions.isEmpty()) {
+    private void offerExport(TransactionStore store, int[] rows, String suggestedFilename) {
+        if (rows.length == 0) {
             return;  // don't offer export if no results
         }
 
@@ -389,7 +392,7 @@ public class ReportsScreen {
         String exportChoice = scanner.nextLine();
 
         if (InputValidator.isYes(exportChoice)) {
-            System.out.print("  Enter filename [" + suggestedFilename + "]: ");
+            System.out.print("  Enter filename [" + suggestedFilename + "] (add .gz to compress): ");
             String filename = scanner.nextLine().trim();
 
             // use suggested filename if user just presses ENTER
@@ -397,8 +400,27 @@ public class ReportsScreen {
                 filename = suggestedFilename;
             }
 
-            FileManager.exportTransactions(transactions, filename);
-            DisplayHelper.showSuccessMessage("Report exported to " + filename);
+            // the rows are read while writing, so the ledger stays read locked until it's done
+            long exported;
+            LedgerLock reading = LedgerRepository.lockForReading();
+            try {
+                exported = FileManager.exportTransactions(store.stream(rows), filename);
+            } finally {
+                reading.unlock();
+            }
+            if (exported >= 0) {
+                DisplayHelper.showSuccessMessage("Report exported to " + filename);
+            }
+        }
+    }
+
+    // adds up the rows with the ledger read locked, then shows the totals
+    private static void showStatistics(TransactionStore store, int[] rows) {
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            DisplayHelper.displayStatistics(store, rows);
+        } finally {
+            reading.unlock();
         }
     }
 }
@@ -0,0 +1,63 @@
+import java.time.LocalDate;
+
+/**
+ * SearchCriteria holds the filters of a custom search
+ * every filter is optional (null means "don't filter on this")
+ *
+ * it doesn't know anything about Scanner or the screens, so the same criteria can come
+ * from the interactive prompts or from a saved query / command line
+ */
+public class SearchCriteria {
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final String description;
+    private final String vendor;
+    private final Long amountCents;
+
+    public SearchCriteria(LocalDate startDate, LocalDate endDate, String description,
+                          String vendor, Long amountCents) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.description = description == null || description.isEmpty() ? null : description;
+        this.vendor = vendor == null || vendor.isEmpty() ? null : vendor;
+        this.amountCents = amountCents;
+    }
+
+    /**
+     * builds criteria from the raw text the user typed, empty text means no filter
+     * throws a RuntimeException if a date or the amount can't be parsed
+     */
+    public static SearchCriteria fromInput(String startDate, String endDate, String description,
+                                           String vendor, String amount) {
+        return new SearchCriteria(
+                isBlank(startDate) ? null : LocalDate.parse(startDate.trim()),
+                isBlank(endDate) ? null : LocalDate.parse(endDate.trim()),
+                isBlank(description) ? null : description.trim(),
+                isBlank(vendor) ? null : vendor.trim(),
+                isBlank(amount) ? null : Money.parse(amount));
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+    public String getDescription() {
+        return description;
+    }
+    public String getVendor() {
+        return vendor;
+    }
+    public Long getAmountCents() {
+        return amountCents;
+    }
+
+    public boolean hasDateFilter() {
+        return startDate != null || endDate != null;
+    }
+
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+}
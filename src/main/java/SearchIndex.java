@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SearchIndex makes vendor and description searches fast
+ *
+ * because the store keeps every distinct vendor/description once (StringDictionary),
+ * we index those distinct strings instead of the rows:
+ *  - every lowercased string is broken into trigrams (3 letter pieces) and each trigram
+ *    points to the strings that contain it, so "contains" only has to check a few candidates
+ *  - every string has a posting list with the rows that use it, so turning the matching
+ *    strings into rows doesn't touch any other row
+ *
+ * matching is the same as before: toLowerCase() on both sides and contains()
+ */
+public class SearchIndex {
+    private final TransactionStore store;
+    private final FieldIndex vendors;
+    private final FieldIndex descriptions;
+
+    /**
+     * builds the index over every row currently in the store
+     */
+    public SearchIndex(TransactionStore store) {
+        this.store = store;
+        this.vendors = new FieldIndex(store.getVendors());
+        this.descriptions = new FieldIndex(store.getDescriptions());
+        for (int row = 0; row < store.size(); row++) {
+            addRow(row);
+        }
+    }
+
+    public TransactionStore getStore() {
+        return store;
+    }
+
+    /**
+     * adds a row that was just appended to the store
+     */
+    public void add(int row) {
+        addRow(row);
+    }
+
+    // private so the constructor doesn't call a method a subclass could override
+    private void addRow(int row) {
+        vendors.add(store.getVendorId(row), row);
+        descriptions.add(store.getDescriptionId(row), row);
+    }
+
+    /**
+     * rows whose vendor contains the text (case-insensitive), in file order
+     */
+    public int[] rowsWithVendorContaining(String text) {
+        return vendors.rowsFor(vendors.idsContaining(text));
+    }
+
+    /**
+     * rows whose description contains the text (case-insensitive), in file order
+     */
+    public int[] rowsWithDescriptionContaining(String text) {
+        return descriptions.rowsFor(descriptions.idsContaining(text));
+    }
+
+    /**
+     * rows whose vendor is exactly this name (ignoring case), in file order
+     */
+    public int[] rowsWithVendor(String vendor) {
+        return vendors.rowsFor(vendors.idsEqualTo(vendor));
+    }
+
+    /**
+     * how many rows use vendors containing the text, without building the row list
+     * (handy to guess how selective a filter is)
+     */
+    public int countVendorContaining(String text) {
+        return vendors.countRows(vendors.idsContaining(text));
+    }
+
+    /**
+     * how many rows use descriptions containing the text
+     */
+    public int countDescriptionContaining(String text) {
+        return descriptions.countRows(descriptions.idsContaining(text));
+    }
+
+    /**
+     * for every vendor id, true if that vendor contains the text
+     * lets a scan check a row with one array lookup instead of lowercasing strings
+     */
+    public boolean[] vendorIdsContaining(String text) {
+        return vendors.idMask(vendors.idsContaining(text));
+    }
+
+    /**
+     * for every description id, true if that description contains the text
+     */
+    public boolean[] descriptionIdsContaining(String text) {
+        return descriptions.idMask(descriptions.idsContaining(text));
+    }
+
+    /**
+     * the index for one dictionary encoded column (vendor or description)
+     */
+    private static class FieldIndex {
+        private final StringDictionary dictionary;
+        private final List<String> normalized = new ArrayList<>(); // lowercased, by id
+        private final Map<Long, IntList> trigrams = new HashMap<>(); // trigram -> ids, ascending
+        private final List<IntList> postings = new ArrayList<>(); // id -> rows, ascending
+
+        FieldIndex(StringDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        void add(int id, int row) {
+            // indexes any strings the dictionary got since last time
+            while (normalized.size() <= id) {
+                indexString(normalized.size());
+            }
+            postings.get(id).add(row);
+        }
+
+        private void indexString(int id) {
+            String lower = dictionary.get(id).toLowerCase();
+            normalized.add(lower);
+            postings.add(new IntList(4));
+            for (int i = 0; i + 3 <= lower.length(); i++) {
+                IntList ids = trigrams.computeIfAbsent(trigram(lower, i), key -> new IntList(4));
+                if (ids.last() != id) { // the same trigram can show up twice in one string
+                    ids.add(id);
+                }
+            }
+        }
+
+        /**
+         * ids of the strings containing the text, ascending
+         */
+        int[] idsContaining(String text) {
+            String lower = text.toLowerCase();
+            if (lower.isEmpty()) {
+                return allIds();
+            }
+            if (lower.length() < 3) {
+                // too short for trigrams, just check every distinct string (not every row)
+                return verify(allIds(), lower);
+            }
+
+            // intersects the id lists of every trigram, starting with the shortest
+            IntList[] lists = new IntList[lower.length() - 2];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = trigrams.get(trigram(lower, i));
+                if (lists[i] == null) {
+                    return new int[0]; // some piece of the text appears nowhere
+                }
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+            int[] candidates = lists[0].toArray();
+            for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+                candidates = intersect(candidates, lists[i]);
+            }
+            // trigrams can match in different places, so the real check is still needed
+            return verify(candidates, lower);
+        }
+
+        int[] idsEqualTo(String text) {
+            String lower = text.toLowerCase();
+            IntList ids = new IntList();
+            for (int id = 0; id < normalized.size(); id++) {
+                if (normalized.get(id).equals(lower)) {
+                    ids.add(id);
+                }
+            }
+            return ids.toArray();
+        }
+
+        /**
+         * all rows using any of the ids, in file order
+         */
+        int[] rowsFor(int[] ids) {
+            int[] rows = new int[countRows(ids)];
+            int count = 0;
+            for (int id : ids) {
+                IntList posting = postings.get(id);
+                for (int i = 0; i < posting.size(); i++) {
+                    rows[count++] = posting.get(i);
+                }
+            }
+            if (ids.length > 1) {
+                Arrays.sort(rows);
+            }
+            return rows;
+        }
+
+        int countRows(int[] ids) {
+            int count = 0;
+            for (int id : ids) {
+                count += postings.get(id).size();
+            }
+            return count;
+        }
+
+        boolean[] idMask(int[] ids) {
+            boolean[] mask = new boolean[dictionary.size()];
+            for (int id : ids) {
+                mask[id] = true;
+            }
+            return mask;
+        }
+
+        private int[] allIds() {
+            int[] ids = new int[normalized.size()];
+            for (int id = 0; id < ids.length; id++) {
+                ids[id] = id;
+            }
+            return ids;
+        }
+
+        private int[] verify(int[] ids, String lower) {
+            IntList matches = new IntList();
+            for (int id : ids) {
+                if (normalized.get(id).contains(lower)) {
+                    matches.add(id);
+                }
+            }
+            return matches.toArray();
+        }
+
+        // keeps the ids that are in both (both ascending)
+        private static int[] intersect(int[] ids, IntList other) {
+            IntList both = new IntList();
+            int j = 0;
+            for (int id : ids) {
+                while (j < other.size() && other.get(j) < id) {
+                    j++;
+                }
+                if (j < other.size() && other.get(j) == id) {
+                    both.add(id);
+                }
+            }
+            return both.toArray();
+        }
+
+        private static long trigram(String text, int start) {
+            return ((long) text.charAt(start) << 32)
+                    | ((long) text.charAt(start + 1) << 16)
+                    | text.charAt(start + 2);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StringDictionary gives every distinct string a small int id
+ * the ledger repeats the same vendors and descriptions over and over,
+ * so we keep each one once and store the id in the rows instead
+ */
+public class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] values = new String[64];
+    private int size = 0;
+
+    /**
+     * returns the id of the string, adding it if we haven't seen it before
+     */
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        ids.put(value, size);
+        return size++;
+    }
+
+    /**
+     * returns the id of the string, or -1 if it isn't in the dictionary
+     */
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    public String get(int id) {
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -1,6 +1,5 @@
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 
 public class Transaction {
     // properties, the data each transaction stores
@@ -8,16 +7,17 @@ public class Transaction {
     private LocalTime time;
     private String description;
     private String vendor;
-    private double amount;  // positive = deposit, negative = payment
+    private long amountCents;  // in cents, positive = deposit, negative = payment
 
     // constructor, how we create a new transaction
+    // the amount is in cents (see Money), so $12.50 is 1250
     public Transaction(LocalDate date, LocalTime time, String description,
-                       String vendor, double amount) {
+                       String vendor, long amountCents) {
         this.date = date;
         this.time = time;
         this.description = description;
         this.vendor = vendor;
-        this.amount = amount;
+        this.amountCents = amountCents;
     }
 
     // getters let us read the transaction data
@@ -33,60 +33,41 @@ public class Transaction {
     public String getVendor() {
         return vendor;
     }
+    public long getAmountCents() {
+        return amountCents;
+    }
+    // the amount in dollars, only for display, do the math with getAmountCents()
     public double getAmount() {
-        return amount;
+        return Money.toDouble(amountCents);
     }
 
     // helper method to check if it is a deposit or payment
     public boolean isDeposit() {
-        return amount > 0;
+        return amountCents > 0;
     }
     public boolean isPayment() {
-        return amount < 0;
+        return amountCents < 0;
     }
 
     // here we format the transactions for CSV file (pipe-separated values)
     // our format: date|time|description|vendor|amount
+    // (TransactionFormat writes it digit by digit, when writing many rows use it directly with one StringBuilder)
     public String toCSVFormat() {
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss");
-
-        return date.format(dateFormatter) + "|" +
-                time.format(timeFormatter) + "|" +
-                description + "|" +
-                vendor + "|" +
-                String.format("%.2f", amount);
+        StringBuilder text = new StringBuilder(64);
+        TransactionFormat.appendCsv(text, this);
+        return text.toString();
     }
 
     // we display transaction in a readable format
     public String toDisplayFormat() {
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss");
-
-        // TODO: Maybe I will add color coding or symbols for deposit and payment
-        String type = amount > 0 ? "[CREDIT]" : "[DEBIT]";
-
-        return String.format("%s %s | %s | %-30s | %-20s | $%,.2f",
-                date.format(dateFormatter),
-                time.format(timeFormatter),
-                type,
-                description,
-                vendor,
-                amount);
+        StringBuilder text = new StringBuilder(96);
+        TransactionFormat.appendDisplay(text, this);
+        return text.toString();
     }
 
     // this helps us create a transaction from a line in the CSV file
+    // the actual scanning happens in TransactionParser (much faster than split + parse)
     public static Transaction fromCSVLine(String csvLine) {
-        // split the line by the pipe character
-        String[] parts = csvLine.split("\\|");
-
-        // parse each part into the right data type
-        LocalDate date = LocalDate.parse(parts[0].trim());
-        LocalTime time = LocalTime.parse(parts[1].trim());
-        String description = parts[2].trim();
-        String vendor = parts[3].trim();
-        double amount = Double.parseDouble(parts[4].trim());
-
-        return new Transaction(date, time, description, vendor, amount);
+        return TransactionParser.parseLine(csvLine);
     }
 }
\ No newline at end of file
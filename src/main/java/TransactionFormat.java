@@ -0,0 +1,126 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * TransactionFormat writes transactions (and their pieces) into a StringBuilder
+ *
+ * dates, times and amounts are written digit by digit, so there are no formatter objects
+ * or String.format calls per row, callers that print or write a lot of rows reuse one
+ * StringBuilder (setLength(0) between rows) and then nothing is allocated per row except
+ * the text itself
+ */
+public class TransactionFormat {
+    // only used for years we don't write by hand (before year 1 or after 9999)
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * date|time|description|vendor|amount, what goes into the CSV file
+     */
+    public static void appendCsv(StringBuilder text, Transaction transaction) {
+        appendDate(text, transaction.getDate());
+        text.append('|');
+        appendTime(text, transaction.getTime());
+        text.append('|')
+                .append(transaction.getDescription()).append('|')
+                .append(transaction.getVendor()).append('|');
+        Money.appendAmount(text, transaction.getAmountCents(), false);
+    }
+
+    /**
+     * the one line readable format of Transaction.toDisplayFormat()
+     */
+    public static void appendDisplay(StringBuilder text, Transaction transaction) {
+        appendDate(text, transaction.getDate());
+        text.append(' ');
+        appendTime(text, transaction.getTime());
+        // TODO: Maybe I will add color coding or symbols for deposit and payment
+        text.append(" | ").append(transaction.isDeposit() ? "[CREDIT]" : "[DEBIT]").append(" | ");
+        appendPadded(text, transaction.getDescription(), 30);
+        text.append(" | ");
+        appendPadded(text, transaction.getVendor(), 20);
+        text.append(" | $");
+        Money.appendAmount(text, transaction.getAmountCents(), true);
+    }
+
+    /**
+     * yyyy-MM-dd
+     */
+    public static void appendDate(StringBuilder text, LocalDate date) {
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            text.append(DATE_FORMAT.format(date));
+            return;
+        }
+        appendDigits(text, year, 4);
+        text.append('-');
+        appendDigits(text, date.getMonthValue(), 2);
+        text.append('-');
+        appendDigits(text, date.getDayOfMonth(), 2);
+    }
+
+    /**
+     * HH:mm:ss
+     */
+    public static void appendTime(StringBuilder text, LocalTime time) {
+        appendDigits(text, time.getHour(), 2);
+        text.append(':');
+        appendDigits(text, time.getMinute(), 2);
+        text.append(':');
+        appendDigits(text, time.getSecond(), 2);
+    }
+
+    /**
+     * same as LocalTime.toString(): HH:mm, or HH:mm:ss when the seconds aren't zero
+     */
+    public static void appendShortTime(StringBuilder text, LocalTime time) {
+        if (time.getNano() != 0) {
+            text.append(time);
+            return;
+        }
+        appendDigits(text, time.getHour(), 2);
+        text.append(':');
+        appendDigits(text, time.getMinute(), 2);
+        if (time.getSecond() != 0) {
+            text.append(':');
+            appendDigits(text, time.getSecond(), 2);
+        }
+    }
+
+    /**
+     * the value followed by spaces up to width, like "%-Ns" (longer values aren't cut)
+     */
+    public static void appendPadded(StringBuilder text, String value, int width) {
+        text.append(value);
+        appendSpaces(text, width - value.length());
+    }
+
+    /**
+     * the amount with thousands separators, right aligned to width, like "%Ns"
+     */
+    public static void appendAmountRightAligned(StringBuilder text, long cents, int width) {
+        int start = text.length();
+        Money.appendAmount(text, cents, true);
+        int missing = width - (text.length() - start);
+        for (int i = 0; i < missing; i++) {
+            text.insert(start, ' ');
+        }
+    }
+
+    public static void appendSpaces(StringBuilder text, int count) {
+        for (int i = 0; i < count; i++) {
+            text.append(' ');
+        }
+    }
+
+    // writes value with leading zeros up to the given width
+    private static void appendDigits(StringBuilder text, int value, int width) {
+        int divisor = 1;
+        for (int i = 1; i < width; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            text.append((char) ('0' + value / divisor % 10));
+        }
+    }
+}
@@ -0,0 +1,468 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TransactionJournal is the append-only log new transactions are written to
+ *
+ * appending a transaction only writes that one line to transactions.journal (no more
+ * copying the whole CSV file for every write), and every so often the journal is
+ * compacted: its lines are appended to transactions.csv and the journal starts over
+ * if the app crashes, whatever is in the journal gets compacted the next time the ledger loads
+ *
+ * the journal is plain text: a header line with the size the CSV file had when the journal
+ * started, then one CSV line per transaction, each ending with '\n'
+ * a last line without '\n' is a write that never finished, it is ignored
+ *
+ * how often we fsync can be tuned with system properties:
+ *  -Dncm.journal.groupSize=N      fsync once every N appends (default 1, every append is durable)
+ *  -Dncm.journal.groupMillis=N    with groupSize > 1, unsynced appends are fsynced after N ms (default 200)
+ *  -Dncm.journal.compactRecords=N compact into the CSV file after N appends (default 500)
+ *
+ * appends hold the journal lock, compacting holds the journal lock and the ledger write lock
+ * (see LedgerLock), so several copies of the app can share one ledger
+ */
+public class TransactionJournal {
+    private static final String JOURNAL_NAME = "transactions.journal";
+    private static final String HEADER_PREFIX = "#journal base=";
+    // compacting reads the journal this much at a time, a big batch is never in memory as a whole
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int GROUP_SIZE = Math.max(1, Integer.getInteger("ncm.journal.groupSize", 1));
+    private static final int GROUP_MILLIS = Math.max(1, Integer.getInteger("ncm.journal.groupMillis", 200));
+    private static final int COMPACT_RECORDS = Math.max(1, Integer.getInteger("ncm.journal.compactRecords", 500));
+
+    private static FileChannel channel; // open journal, null until the first append
+    private static int records;         // appends since the journal started
+    private static int unsynced;        // appends not fsynced yet
+    private static Thread flusher;      // fsyncs pending appends when group commit is on
+    private static Object journalKey;   // file key of the journal we created, see hasOwnJournal()
+    private static long appended;       // transactions this copy of the app appended, see appendedCount()
+
+    /**
+     * appends one transaction to the journal, returns its sequence number (see appendedCount())
+     */
+    public static long append(Transaction transaction) throws IOException {
+        return appendAll(List.of(transaction));
+    }
+
+    /**
+     * appends several transactions with a single write, they are fsynced together
+     * (that is the group commit for small batches, big imports use appendBatch)
+     * returns the sequence number of the last one
+     */
+    public static long appendAll(List<Transaction> transactions) throws IOException {
+        if (transactions.isEmpty()) {
+            return appendedCount();
+        }
+        LedgerLock lock = LedgerLock.journal();
+        try {
+            return appendLocked(transactions);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static synchronized long appendLocked(List<Transaction> transactions) throws IOException {
+        StringBuilder text = new StringBuilder(transactions.size() * 64);
+        for (Transaction transaction : transactions) {
+            text.append(transaction.toCSVFormat()).append('\n');
+        }
+        writeFully(open(), ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+        records += transactions.size();
+        unsynced += transactions.size();
+
+        if (unsynced >= GROUP_SIZE || transactions.size() > 1) {
+            sync();
+        } else {
+            startFlusher();
+        }
+        appended += transactions.size();
+        return appended;
+    }
+
+    /**
+     * writes a whole batch (like an import) as all or nothing
+     * the batch becomes a journal of its own: it is written to a temp file, forced to disk and
+     * renamed into place, so after a crash either every line of it is in the journal or none is
+     * (with appendAll a crash half way through a big write would keep the first half)
+     *
+     * anything already in the journal is compacted first, the caller should compact
+     * again right after to move the batch into the CSV file
+     * returns the sequence number of the last transaction
+     */
+    public static long appendBatch(List<Transaction> transactions) throws IOException {
+        if (transactions.isEmpty()) {
+            return appendedCount();
+        }
+        LedgerLock lock = LedgerLock.journal();
+        try {
+            return appendBatchLocked(transactions);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static synchronized long appendBatchLocked(List<Transaction> transactions) throws IOException {
+        Path journalPath = new File(JOURNAL_NAME).toPath();
+        if (channel != null || Files.exists(journalPath)) {
+            compact();
+        }
+        Path tempPath = new File(JOURNAL_NAME + ".tmp").toPath();
+        try (FileChannel temp = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            LedgerFileWriter writer = new LedgerFileWriter(temp);
+            writer.writeLine(HEADER_PREFIX + FileManager.getLedgerFile().length());
+            for (Transaction transaction : transactions) {
+                writer.write(transaction);
+            }
+            writer.flush();
+            temp.force(true);
+        }
+        FileManager.replaceFile(tempPath, journalPath);
+        journalKey = fileKey(journalPath);
+        appended += transactions.size();
+        return appended;
+    }
+
+    /**
+     * how many transactions this copy of the app appended so far, the n-th append has sequence number n
+     * read while holding the journal lock right after a compaction, everything up to this
+     * number is in the CSV file and nothing after it is (LedgerRepository uses that to merge
+     * appends that happen while it loads)
+     */
+    public static synchronized long appendedCount() {
+        return appended;
+    }
+
+    /**
+     * forces every appended transaction to disk
+     */
+    public static synchronized void sync() throws IOException {
+        if (channel != null && unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+    }
+
+    /**
+     * true once the journal has enough appends that it should be compacted
+     */
+    public static synchronized boolean needsCompaction() {
+        return records >= COMPACT_RECORDS;
+    }
+
+    /**
+     * moves everything in the journal into the CSV file and starts a new journal
+     * this is also the crash recovery: it runs before the ledger is loaded, so
+     * transactions that only made it into the journal end up in the CSV file
+     *
+     * returns how many transactions were moved
+     */
+    public static int compact() throws IOException {
+        LedgerLock journal = LedgerLock.journal();
+        try {
+            LedgerLock ledger = LedgerLock.writeLedger();
+            try {
+                return compactLocked();
+            } finally {
+                ledger.unlock();
+            }
+        } finally {
+            journal.unlock();
+        }
+    }
+
+    private static synchronized int compactLocked() throws IOException {
+        Path journalPath = new File(JOURNAL_NAME).toPath();
+        close();
+        journalKey = null;
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+
+        int moved;
+        try (FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            byte[] head = read(journal, 0, (int) Math.min(CHUNK_SIZE, journal.size()));
+            int headerEnd = indexOf(head, 0, (byte) '\n');
+            long base = parseBase(head, headerEnd);
+            long recordsStart = base >= 0 ? headerEnd + 1 : 0;
+            long recordsEnd = lastNewline(journal) + 1; // drops a half written last line
+            moved = countLines(journal, recordsStart, recordsEnd);
+
+            if (moved > 0) {
+                appendToLedger(journal, recordsStart, recordsEnd, base);
+            }
+        }
+        // only now the journal can go, until the CSV file is forced it still has the only copy
+        Files.delete(journalPath);
+        return moved;
+    }
+
+    /**
+     * true if the journal on disk is the one this copy of the app wrote
+     * (false if there is none, or it is a leftover or belongs to another copy of the app)
+     * only meaningful while holding the journal lock
+     */
+    public static synchronized boolean hasOwnJournal() throws IOException {
+        if (journalKey == null) {
+            return false;
+        }
+        Path journalPath = new File(JOURNAL_NAME).toPath();
+        return Files.exists(journalPath) && journalKey.equals(fileKey(journalPath));
+    }
+
+    /**
+     * true if there is a journal on disk, ours or not
+     */
+    public static boolean exists() {
+        return new File(JOURNAL_NAME).exists();
+    }
+
+    /**
+     * fsyncs and closes the journal file (it is opened again on the next append)
+     */
+    public static synchronized void close() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+        records = 0;
+    }
+
+    // opens the journal, a journal that isn't ours (leftovers from a previous run, or
+    // another copy of the app writing to the same ledger) is compacted first
+    // that way every journal has a single writer, which is what lets compactJournal()
+    // know that all the lines it moves are already in memory
+    private static FileChannel open() throws IOException {
+        if (channel != null && hasOwnJournal()) {
+            return channel;
+        }
+        if (channel != null) {
+            // another copy of the app compacted our journal, our lines are in the CSV file now
+            channel.close();
+            channel = null;
+        }
+        Path journalPath = new File(JOURNAL_NAME).toPath();
+        if (Files.exists(journalPath)) {
+            compact();
+        }
+        channel = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        String header = HEADER_PREFIX + FileManager.getLedgerFile().length() + "\n";
+        writeFully(channel, ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8)));
+        channel.force(true);
+        journalKey = fileKey(journalPath);
+        records = 0;
+        unsynced = 0;
+        return channel;
+    }
+
+    // identifies the file itself (the inode), a new file with the same name gets a different key
+    // where the OS has no file keys the creation time is the next best thing
+    private static Object fileKey(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+
+    /**
+     * appends the journal lines journal[start..end) to the CSV file
+     * the bytes go from file to file (transferTo), so a big batch needs no heap
+     *
+     * the CSV file had "base" bytes when the journal started, so after a crash we can tell
+     * if a previous compaction already wrote (some of) these lines and avoid writing them twice
+     *
+     * what goes into the CSV file is the journal lines without the last '\n', with a '\n' in
+     * front when the CSV file doesn't end with one (same as writeTransaction did)
+     */
+    private static void appendToLedger(FileChannel journal, long start, long end, long base) throws IOException {
+        Path ledgerPath = FileManager.getLedgerFile().toPath();
+        long lines = end - 1 - start;
+        try (FileChannel ledger = FileChannel.open(ledgerPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ledger.size();
+            long appendAt = size;
+            if (base >= 0 && base <= size) {
+                boolean newlineFirst = !endsWithNewline(ledger, base);
+                long payloadLength = lines + (newlineFirst ? 1 : 0);
+                long written = Math.min(payloadLength, size - base);
+                boolean prefix = isWritten(ledger, base, journal, start, newlineFirst, written);
+                if (prefix && written == payloadLength) {
+                    return; // a compaction finished writing before the crash
+                }
+                if (prefix) {
+                    appendAt = base; // a compaction died half way, write it again from the start
+                } else if (size != base) {
+                    System.out.println("Warning: " + ledgerPath + " changed since the journal was started, "
+                            + "appending the journal to the end.");
+                }
+            } else if (base >= 0) {
+                System.out.println("Warning: " + ledgerPath + " got smaller since the journal was started, "
+                        + "appending the journal to the end.");
+            }
+
+            ledger.truncate(appendAt);
+            ledger.position(appendAt);
+            if (!endsWithNewline(ledger, appendAt)) {
+                writeFully(ledger, ByteBuffer.wrap(new byte[] {'\n'}));
+            }
+            long copied = 0;
+            while (copied < lines) {
+                copied += journal.transferTo(start + copied, lines - copied, ledger);
+            }
+            ledger.force(true);
+        }
+    }
+
+    // true if the CSV file from position on already holds the first count bytes of what
+    // appendToLedger writes, compared a chunk at a time
+    private static boolean isWritten(FileChannel ledger, long position, FileChannel journal, long start,
+                                     boolean newlineFirst, long count) throws IOException {
+        if (count > 0 && newlineFirst) {
+            if (read(ledger, position, 1)[0] != '\n') {
+                return false;
+            }
+            position++;
+            count--;
+        }
+        ByteBuffer written = ByteBuffer.allocate(CHUNK_SIZE);
+        ByteBuffer expected = ByteBuffer.allocate(CHUNK_SIZE);
+        for (long done = 0; done < count; done += written.limit()) {
+            int length = (int) Math.min(CHUNK_SIZE, count - done);
+            readFully(ledger, written.clear().limit(length), position + done);
+            readFully(journal, expected.clear().limit(length), start + done);
+            if (!written.flip().equals(expected.flip())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // true for an empty file too, there is nothing to separate from
+    private static boolean endsWithNewline(FileChannel ledger, long size) throws IOException {
+        if (size == 0) {
+            return true;
+        }
+        return read(ledger, size - 1, 1)[0] == '\n';
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+    }
+
+    private static byte[] read(FileChannel file, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+    // the CSV size written in the header, -1 if the header is missing
+    private static long parseBase(byte[] journal, int headerEnd) {
+        if (headerEnd < 0) {
+            return -1;
+        }
+        String header = new String(journal, 0, headerEnd, StandardCharsets.UTF_8);
+        if (!header.startsWith(HEADER_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.substring(HEADER_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, byte value) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // position of the last '\n' in the file, -1 if there is none (read backwards a chunk at a time)
+    private static long lastNewline(FileChannel file) throws IOException {
+        long end = file.size();
+        while (end > 0) {
+            long start = Math.max(0, end - CHUNK_SIZE);
+            byte[] chunk = read(file, start, (int) (end - start));
+            for (int i = chunk.length - 1; i >= 0; i--) {
+                if (chunk[i] == '\n') {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    private static int countLines(FileChannel file, long start, long end) throws IOException {
+        int count = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        for (long position = start; position < end; position += buffer.limit()) {
+            readFully(file, buffer.clear().limit((int) Math.min(CHUNK_SIZE, end - position)), position);
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (bytes[i] == '\n') {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // with group commit on, a background thread makes sure appends don't stay unsynced for long
+    private static void startFlusher() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = new Thread(TransactionJournal::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        // and whatever is still pending when the app exits gets synced too
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                sync();
+            } catch (IOException e) {
+                System.out.println("Error syncing journal: " + e.getMessage());
+            }
+        }));
+    }
+
+    private static void flushLoop() {
+        while (true) {
+            try {
+                Thread.sleep(GROUP_MILLIS);
+                sync();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.out.println("Error syncing journal: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * TransactionParser turns one pipe-separated line into a Transaction
+ * it scans the raw bytes directly, so the date, time and amount columns
+ * never become Strings (only description and vendor do)
+ *
+ * it accepts the same lines as the old split("\\|") + trim() + parse version,
+ * anything that doesn't look like the usual yyyy-MM-dd|HH:mm:ss|...|amount layout
+ * is handed to the regular java.time / BigDecimal parsers so odd but valid values still work
+ * (the amount is read straight into cents, see Money)
+ */
+public class TransactionParser {
+    /**
+     * parses a line that is already a String (used by Transaction.fromCSVLine)
+     */
+    public static Transaction parseLine(String csvLine) {
+        byte[] bytes = csvLine.getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * parses the line stored in bytes[start..end) (UTF-8, without the line break)
+     * throws a RuntimeException if the line is corrupted
+     */
+    public static Transaction parse(byte[] bytes, int start, int end) {
+        Fields fields = scan(bytes, start, end);
+        return new Transaction(LocalDate.of(fields.year, fields.month, fields.day),
+                LocalTime.of(fields.hour, fields.minute, fields.second, fields.nano),
+                fields.description, fields.vendor, fields.amountCents);
+    }
+
+    /**
+     * parses the line stored in bytes[start..end) straight into a column store
+     * without building a Transaction object, throws a RuntimeException if the line is corrupted
+     */
+    public static void parseInto(byte[] bytes, int start, int end, TransactionStore store) {
+        Fields fields = scan(bytes, start, end);
+        store.add(epochDay(fields.year, fields.month, fields.day),
+                fields.hour * 3600 + fields.minute * 60 + fields.second,
+                fields.amountCents, fields.description, fields.vendor);
+    }
+
+    // the columns of one line, the date and time already checked (so they are a real day and time)
+    private static final class Fields {
+        int year;
+        int month;
+        int day;
+        int hour;
+        int minute;
+        int second;
+        int nano; // only from the LocalTime.parse fallback (like 10:00:00.5), the store drops it
+        String description;
+        String vendor;
+        long amountCents;
+    }
+
+    // the scanning both entry points share
+    private static Fields scan(byte[] bytes, int start, int end) {
+        // finds the four pipes between the five columns
+        int pipe1 = indexOfPipe(bytes, start, end);
+        int pipe2 = indexOfPipe(bytes, pipe1 + 1, end);
+        int pipe3 = indexOfPipe(bytes, pipe2 + 1, end);
+        int pipe4 = indexOfPipe(bytes, pipe3 + 1, end);
+        // anything after a fifth pipe is ignored, same as split() did
+        int amountEnd = indexOfPipeOrEnd(bytes, pipe4 + 1, end);
+
+        Fields fields = new Fields();
+        scanDate(bytes, start, pipe1, fields);
+        scanTime(bytes, pipe1 + 1, pipe2, fields);
+        fields.description = decodeTrimmed(bytes, pipe2 + 1, pipe3);
+        fields.vendor = decodeTrimmed(bytes, pipe3 + 1, pipe4);
+        fields.amountCents = parseAmount(bytes, pipe4 + 1, amountEnd);
+        return fields;
+    }
+
+    /**
+     * true if the line is empty or only whitespace (same as line.trim().isEmpty())
+     */
+    public static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isTrimmable(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // reads yyyy-MM-dd, falls back to LocalDate.parse for anything else
+    private static void scanDate(byte[] bytes, int start, int end, Fields fields) {
+        start = trimStart(bytes, start, end);
+        end = trimEnd(bytes, start, end);
+        if (end - start == 10 && bytes[start + 4] == '-' && bytes[start + 7] == '-') {
+            int year = digits(bytes, start, 4);
+            int month = digits(bytes, start + 5, 2);
+            int day = digits(bytes, start + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+                    LocalDate.of(year, month, day); // throws, with the same message as always
+                }
+                fields.year = year;
+                fields.month = month;
+                fields.day = day;
+                return;
+            }
+        }
+        LocalDate date = LocalDate.parse(decode(bytes, start, end));
+        fields.year = date.getYear();
+        fields.month = date.getMonthValue();
+        fields.day = date.getDayOfMonth();
+    }
+
+    // days since 1970-01-01, the same count as LocalDate.toEpochDay() (the formula is taken from
+    // there) without making the LocalDate, the date has to be a real one with a year from 0 to 9999
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return total - 719_528; // days from 0000-01-01 to 1970-01-01
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    // reads HH:mm:ss, falls back to LocalTime.parse for anything else (like HH:mm)
+    private static void scanTime(byte[] bytes, int start, int end, Fields fields) {
+        start = trimStart(bytes, start, end);
+        end = trimEnd(bytes, start, end);
+        if (end - start == 8 && bytes[start + 2] == ':' && bytes[start + 5] == ':') {
+            int hour = digits(bytes, start, 2);
+            int minute = digits(bytes, start + 3, 2);
+            int second = digits(bytes, start + 6, 2);
+            if (hour >= 0 && minute >= 0 && second >= 0) {
+                if (hour > 23 || minute > 59 || second > 59) {
+                    LocalTime.of(hour, minute, second); // throws, with the same message as always
+                }
+                fields.hour = hour;
+                fields.minute = minute;
+                fields.second = second;
+                return;
+            }
+        }
+        LocalTime time = LocalTime.parse(decode(bytes, start, end));
+        fields.hour = time.getHour();
+        fields.minute = time.getMinute();
+        fields.second = time.getSecond();
+        fields.nano = time.getNano();
+    }
+
+    // reads the amount column straight into cents
+    private static long parseAmount(byte[] bytes, int start, int end) {
+        start = trimStart(bytes, start, end);
+        end = trimEnd(bytes, start, end);
+        return Money.parse(bytes, start, end);
+    }
+
+    // reads count digits as a number, or -1 if one of them isn't a digit
+    private static int digits(byte[] bytes, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int indexOfPipe(byte[] bytes, int start, int end) {
+        int index = indexOfPipeOrEnd(bytes, start, end);
+        if (index == end) {
+            throw new IllegalArgumentException("Line has fewer than 5 columns");
+        }
+        return index;
+    }
+
+    private static int indexOfPipeOrEnd(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '|') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static String decodeTrimmed(byte[] bytes, int start, int end) {
+        start = trimStart(bytes, start, end);
+        end = trimEnd(bytes, start, end);
+        return decode(bytes, start, end);
+    }
+
+    private static String decode(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // String.trim() removes every char up to and including ' ', multi-byte UTF-8 never uses those bytes
+    private static boolean isTrimmable(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static int trimStart(byte[] bytes, int start, int end) {
+        while (start < end && isTrimmable(bytes[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(byte[] bytes, int start, int end) {
+        while (end > start && isTrimmable(bytes[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+}
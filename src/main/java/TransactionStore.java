@@ -0,0 +1,257 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+/**
+ * TransactionStore keeps the ledger column by column in primitive arrays
+ * instead of one Transaction object per row
+ *
+ * a row is just an index into the arrays: the date is stored as an epoch day,
+ * the time as seconds of the day, the amount in cents, and vendor/description
+ * as ids into a StringDictionary, that's about 24 bytes per row and scans
+ * walk straight through memory without chasing pointers
+ */
+public class TransactionStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] epochDays;
+    private int[] secondsOfDay;
+    private long[] amountCents;
+    private int[] descriptionIds;
+    private int[] vendorIds;
+    private int size = 0;
+
+    private final StringDictionary descriptions = new StringDictionary();
+    private final StringDictionary vendors = new StringDictionary();
+
+    public TransactionStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TransactionStore(int capacity) {
+        capacity = Math.max(capacity, 16);
+        epochDays = new int[capacity];
+        secondsOfDay = new int[capacity];
+        amountCents = new long[capacity];
+        descriptionIds = new int[capacity];
+        vendorIds = new int[capacity];
+    }
+
+    /**
+     * builds a store around columns that were read in one piece (see LedgerSnapshot)
+     * the arrays are used as they are, not copied, and the dictionaries are rebuilt in id order
+     * throws IllegalArgumentException if the columns don't fit together
+     */
+    static TransactionStore fromColumns(int size, int[] epochDays, int[] secondsOfDay, long[] amountCents,
+                                        int[] descriptionIds, int[] vendorIds,
+                                        String[] descriptionValues, String[] vendorValues) {
+        TransactionStore store = new TransactionStore(0);
+        store.epochDays = epochDays;
+        store.secondsOfDay = secondsOfDay;
+        store.amountCents = amountCents;
+        store.descriptionIds = descriptionIds;
+        store.vendorIds = vendorIds;
+        store.size = size;
+        for (int id = 0; id < descriptionValues.length; id++) {
+            if (store.descriptions.intern(descriptionValues[id]) != id) {
+                throw new IllegalArgumentException("Duplicate description in dictionary");
+            }
+        }
+        for (int id = 0; id < vendorValues.length; id++) {
+            if (store.vendors.intern(vendorValues[id]) != id) {
+                throw new IllegalArgumentException("Duplicate vendor in dictionary");
+            }
+        }
+        // a bad id would only blow up much later, when that row is shown
+        for (int row = 0; row < size; row++) {
+            if (descriptionIds[row] < 0 || descriptionIds[row] >= descriptionValues.length
+                    || vendorIds[row] < 0 || vendorIds[row] >= vendorValues.length
+                    || secondsOfDay[row] < 0 || secondsOfDay[row] >= 86_400) {
+                throw new IllegalArgumentException("Bad value in row " + row);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * builds a store from a list of transactions
+     */
+    public static TransactionStore of(List<Transaction> transactions) {
+        TransactionStore store = new TransactionStore(transactions.size());
+        for (Transaction transaction : transactions) {
+            store.add(transaction);
+        }
+        return store;
+    }
+
+    /**
+     * adds a row and returns its index
+     */
+    public int add(Transaction transaction) {
+        return add(transaction.getDate().toEpochDay(),
+                transaction.getTime().toSecondOfDay(),
+                transaction.getAmountCents(),
+                transaction.getDescription(),
+                transaction.getVendor());
+    }
+
+    /**
+     * adds a row from already decoded columns and returns its index
+     */
+    public int add(long epochDay, int secondOfDay, long cents, String description, String vendor) {
+        ensureCapacity(size + 1);
+        epochDays[size] = Math.toIntExact(epochDay);
+        secondsOfDay[size] = secondOfDay;
+        amountCents[size] = cents;
+        descriptionIds[size] = descriptions.intern(description);
+        vendorIds[size] = vendors.intern(vendor);
+        return size++;
+    }
+
+    /**
+     * appends all rows of another store (used to merge the chunks the loader parsed in parallel)
+     * the other store has its own dictionaries, so the ids are translated into ours
+     */
+    public void addAll(TransactionStore other) {
+        int[] descriptionMap = translate(other.descriptions, descriptions);
+        int[] vendorMap = translate(other.vendors, vendors);
+
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.epochDays, 0, epochDays, size, other.size);
+        System.arraycopy(other.secondsOfDay, 0, secondsOfDay, size, other.size);
+        System.arraycopy(other.amountCents, 0, amountCents, size, other.size);
+        for (int row = 0; row < other.size; row++) {
+            descriptionIds[size + row] = descriptionMap[other.descriptionIds[row]];
+            vendorIds[size + row] = vendorMap[other.vendorIds[row]];
+        }
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // column getters, these are what the scans should use
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+    public int getSecondOfDay(int row) {
+        return secondsOfDay[row];
+    }
+    public long getAmountCents(int row) {
+        return amountCents[row];
+    }
+    public int getDescriptionId(int row) {
+        return descriptionIds[row];
+    }
+    public int getVendorId(int row) {
+        return vendorIds[row];
+    }
+    public String getDescription(int row) {
+        return descriptions.get(descriptionIds[row]);
+    }
+    public String getVendor(int row) {
+        return vendors.get(vendorIds[row]);
+    }
+    public boolean isDeposit(int row) {
+        return amountCents[row] > 0;
+    }
+    public boolean isPayment(int row) {
+        return amountCents[row] < 0;
+    }
+
+    public StringDictionary getDescriptions() {
+        return descriptions;
+    }
+    public StringDictionary getVendors() {
+        return vendors;
+    }
+
+    /**
+     * builds a Transaction object for one row (only do this for rows you actually show)
+     */
+    public Transaction get(int row) {
+        return new Transaction(
+                LocalDate.ofEpochDay(epochDays[row]),
+                LocalTime.ofSecondOfDay(secondsOfDay[row]),
+                getDescription(row),
+                getVendor(row),
+                amountCents[row]);
+    }
+
+    /**
+     * builds Transaction objects for the given rows, in the given order
+     */
+    public List<Transaction> toList(int[] rows) {
+        List<Transaction> transactions = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            transactions.add(get(row));
+        }
+        return transactions;
+    }
+
+    /**
+     * the given rows as Transaction objects, built one at a time while the stream is read
+     * (so exporting a big result doesn't need all of them in memory at once)
+     */
+    public Stream<Transaction> stream(int[] rows) {
+        return Arrays.stream(rows).mapToObj(this::get);
+    }
+
+    /**
+     * returns the indexes of all rows matching the filter, in file order
+     */
+    public int[] select(IntPredicate filter) {
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (filter.test(row)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * returns the indexes of every row, in file order
+     */
+    public int[] allRows() {
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= epochDays.length) {
+            return;
+        }
+        int capacity = Math.max(needed, epochDays.length + (epochDays.length >> 1));
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        secondsOfDay = Arrays.copyOf(secondsOfDay, capacity);
+        amountCents = Arrays.copyOf(amountCents, capacity);
+        descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+        vendorIds = Arrays.copyOf(vendorIds, capacity);
+    }
+
+    // maps every id of one dictionary to the id of the same string in another
+    private static int[] translate(StringDictionary from, StringDictionary to) {
+        int[] map = new int[from.size()];
+        for (int id = 0; id < map.length; id++) {
+            map[id] = to.intern(from.get(id));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,233 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * appends from many threads and from many processes at once, then checks that every row
+ * ended up in transactions.csv exactly once and in one piece
+ *
+ * the in-process test runs in the surefire working directory (target/test-ledger, see pom.xml),
+ * the processes each get a temp directory of their own
+ */
+class LedgerConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ROWS_PER_THREAD = 250;
+    private static final int PROCESSES = 4;
+    private static final int PROCESS_THREADS = 4;
+    private static final int ROWS_PER_PROCESS_THREAD = 100;
+    private static final String VENDOR = "Concurrency Test";
+
+    // a whole line as TransactionFormat writes it, anything else means a torn or mixed up row
+    private static final Pattern ROW = Pattern.compile(
+            "\\d{4}-\\d{2}-\\d{2}\\|\\d{2}:\\d{2}:\\d{2}\\|[a-z0-9-]+\\|" + VENDOR + "\\|-?\\d+\\.\\d{2}");
+
+    @BeforeEach
+    void startWithEmptyLedger() throws IOException {
+        for (String name : List.of("transactions.csv", "transactions.journal", "transactions.snapshot")) {
+            Files.deleteIfExists(Path.of(name));
+        }
+        deleteTree(Path.of("backups"));
+        LedgerRepository.invalidate();
+    }
+
+    @Test
+    void threadsAppendingWhileOthersReadLoseNothing() throws Exception {
+        LedgerRepository.getStore(); // loaded before the writers start, so every append is merged
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS + 2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                String prefix = "t" + thread;
+                writers.add(threads.submit(() -> append(prefix, ROWS_PER_THREAD)));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int reader = 0; reader < 2; reader++) {
+                readers.add(threads.submit(() -> readWhile(writing)));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(2, TimeUnit.MINUTES);
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get(1, TimeUnit.MINUTES); // rethrows what a reader found
+            }
+        } finally {
+            writing.set(false);
+            threads.shutdownNow();
+        }
+        FileManager.close();
+
+        Set<String> expected = expected(THREADS, ROWS_PER_THREAD, "t");
+        assertEquals(expected, rowsInFile(Path.of("transactions.csv")));
+
+        // and the in-memory ledger has every row once too
+        LedgerLock reading = LedgerRepository.lockForReading();
+        try {
+            TransactionStore store = LedgerRepository.getStore();
+            Set<String> inMemory = new HashSet<>();
+            for (int row = 0; row < store.size(); row++) {
+                assertTrue(inMemory.add(store.getDescription(row)), "duplicated in memory: " + store.getDescription(row));
+            }
+            assertEquals(expected, inMemory);
+        } finally {
+            reading.unlock();
+        }
+    }
+
+    @Test
+    void processesAppendingAtOnceLoseNothing(@TempDir Path directory) throws Exception {
+        String classPath = classPathOf(LedgerRepository.class) + File.pathSeparator + classPathOf(Worker.class);
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> workers = new ArrayList<>();
+        for (int process = 0; process < PROCESSES; process++) {
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", classPath,
+                    "-Dncm.journal.compactRecords=50", Worker.class.getName(),
+                    "p" + process, String.valueOf(PROCESS_THREADS), String.valueOf(ROWS_PER_PROCESS_THREAD));
+            builder.directory(directory.toFile());
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(directory.resolve("worker-" + process + ".log").toFile());
+            workers.add(builder.start());
+        }
+        for (int process = 0; process < workers.size(); process++) {
+            Process worker = workers.get(process);
+            Path log = directory.resolve("worker-" + process + ".log");
+            assertTrue(worker.waitFor(3, TimeUnit.MINUTES), "worker " + process + " didn't finish");
+            assertEquals(0, worker.exitValue(), () -> "worker failed:\n" + readLog(log));
+        }
+
+        Set<String> expected = new HashSet<>();
+        for (int process = 0; process < PROCESSES; process++) {
+            expected.addAll(expected(PROCESS_THREADS, ROWS_PER_PROCESS_THREAD, "p" + process + "-t"));
+        }
+        assertEquals(expected, rowsInFile(directory.resolve("transactions.csv")));
+    }
+
+    /**
+     * appends rows from a few threads in its own process, started by the test above
+     * args: description prefix, number of threads, rows per thread
+     */
+    static class Worker {
+        public static void main(String[] args) throws Exception {
+            String prefix = args[0];
+            int threads = Integer.parseInt(args[1]);
+            int rows = Integer.parseInt(args[2]);
+            LedgerRepository.getStore(); // the other processes' rows come in through the file
+            List<Thread> writers = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                String threadPrefix = prefix + "-t" + thread;
+                writers.add(Thread.ofPlatform().start(() -> append(threadPrefix, rows)));
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            FileManager.close();
+        }
+    }
+
+    // appends rows described "<prefix>-<n>", n from 0 to count - 1
+    static void append(String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction(LocalDate.of(2077, 1, 1).plusDays(i % 365),
+                    LocalTime.of(i % 24, i % 60, i % 60), prefix + "-" + i, VENDOR, i % 2 == 0 ? i + 1 : -(i + 1));
+            FileManager.writeTransaction(transaction);
+        }
+    }
+
+    // walks the whole in-memory ledger again and again while the writers run, checking that
+    // the store and everything built over it always agree
+    private static void readWhile(AtomicBoolean writing) {
+        int lastSize = 0;
+        while (writing.get()) {
+            LedgerLock reading = LedgerRepository.lockForReading();
+            try {
+                DateIndex index = LedgerRepository.getDateIndex();
+                TransactionStore store = index.getStore();
+                int size = store.size();
+                assertTrue(size >= lastSize, "the ledger shrank from " + lastSize + " to " + size);
+                assertEquals(size, index.all().size(), "date index and store differ");
+                assertEquals(size, LedgerRepository.getRollup().allTime().getCount(), "rollup and store differ");
+                assertEquals(size, LedgerRepository.getSearchIndex().rowsWithVendorContaining(VENDOR).length,
+                        "search index and store differ");
+                DateIndex.Range all = index.all();
+                for (int position = 0; position < all.size(); position++) {
+                    assertEquals(VENDOR, store.get(all.get(position)).getVendor());
+                }
+                lastSize = size;
+            } finally {
+                reading.unlock();
+            }
+        }
+    }
+
+    private static Set<String> expected(int threads, int rows, String prefix) {
+        Set<String> descriptions = new HashSet<>();
+        for (int thread = 0; thread < threads; thread++) {
+            for (int i = 0; i < rows; i++) {
+                descriptions.add(prefix + thread + "-" + i);
+            }
+        }
+        return descriptions;
+    }
+
+    // the descriptions in the file, failing on a torn line or a row that is there twice
+    private static Set<String> rowsInFile(Path file) throws IOException {
+        Set<String> descriptions = new HashSet<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            assertTrue(ROW.matcher(line).matches(), "torn row: " + line);
+            String description = Transaction.fromCSVLine(line).getDescription();
+            assertTrue(descriptions.add(description), "duplicated row: " + line);
+        }
+        return descriptions;
+    }
+
+    private static String classPathOf(Class<?> type) throws Exception {
+        return Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    private static String readLog(Path log) {
+        try {
+            List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+            return String.join("\n", lines.subList(Math.max(0, lines.size() - 20), lines.size()));
+        } catch (IOException e) {
+            return "(no log: " + e.getMessage() + ")";
+        }
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}